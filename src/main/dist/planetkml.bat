@@ -0,0 +1,21 @@
+@echo off
+rem Starts the KML Generator with the AppCDS archive recorded at build time (mvn -Pdist package).
+rem An archive only matches the jar path it was recorded with (planetkml.jsa.path), so once the files
+rem have been moved the next start re-runs the training in the background to record one for this
+rem location, and later starts use it.
+rem Without a JDK 13+ or the archive it falls back to a normal start.
+set DIR=%~dp0
+set JAR=%DIR%planetkml.jar
+set CDS=
+set RECORDED=
+if exist "%DIR%planetkml.jsa.path" set /p RECORDED=<"%DIR%planetkml.jsa.path"
+if /i not "%RECORDED%"=="%JAR%" goto record
+if not exist "%DIR%planetkml.jsa" goto start
+set CDS=-XX:SharedArchiveFile="%DIR%planetkml.jsa" -Xshare:auto
+goto start
+:record
+del "%DIR%planetkml.jsa" 2>nul
+>"%DIR%planetkml.jsa.path" echo %JAR%
+if not errorlevel 1 start "" /b /low javaw -XX:+IgnoreUnrecognizedVMOptions -XX:ArchiveClassesAtExit="%DIR%planetkml.jsa" -Djava.awt.headless=true -jar "%JAR%" --train
+:start
+javaw %CDS% -jar "%JAR%" %*
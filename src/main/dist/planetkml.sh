@@ -0,0 +1,19 @@
+#!/bin/sh
+# Starts the KML Generator with the AppCDS archive recorded at build time (mvn -Pdist package).
+# An archive only matches the jar path it was recorded with (planetkml.jsa.path), so once the files
+# have been moved the next start re-runs the training in the background to record one for this
+# location, and later starts use it.
+# Without a JDK 13+ or the archive it falls back to a normal start.
+DIR="$(cd "$(dirname "$0")" && pwd)"
+JAR="$DIR/planetkml.jar"
+CDS=""
+if [ "$(cat "$DIR/planetkml.jsa.path" 2>/dev/null)" = "$JAR" ]; then
+  if [ -f "$DIR/planetkml.jsa" ]; then
+    CDS="-XX:SharedArchiveFile=$DIR/planetkml.jsa -Xshare:auto"
+  fi
+elif [ -w "$DIR" ]; then
+  rm -f "$DIR/planetkml.jsa"
+  printf '%s\n' "$JAR" > "$DIR/planetkml.jsa.path"
+  java -XX:+IgnoreUnrecognizedVMOptions -XX:ArchiveClassesAtExit="$DIR/planetkml.jsa" -Djava.awt.headless=true -jar "$JAR" --train >/dev/null 2>&1 &
+fi
+exec java $CDS -jar "$JAR" "$@"
@@ -0,0 +1,127 @@
+package com.echostar;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Horizontal beamwidths by antenna model, read from a local antenna-pattern table and looked up by
+ * a sector's {@code Antenna File}. Antennas missing from the table keep the 65 degree default.
+ *
+ * Planet names pattern files per port and with an extension ("FFVV-65B-R2_1.pafx"), so both the
+ * table and the lookup drop a short file extension and a trailing {@code _<port>} and ignore case:
+ * one "FFVV-65B-R2" line covers every port of that model.
+ */
+final class AntennaPatterns {
+
+    static final double DEFAULT_BEAMWIDTH = 65.0;
+
+    private static final Pattern EXTENSION = Pattern.compile("\\.[a-z]{1,5}$");
+    private static final Pattern PORT_SUFFIX = Pattern.compile("_\\d+$");
+
+    /** More distinct Antenna File values than this and lookups stop being cached. */
+    private static final int MAX_CACHED_NAMES = 4096;
+
+    private static final AntennaPatterns EMPTY = new AntennaPatterns(Collections.<String, Double>emptyMap());
+
+    private final Map<String, Double> beamwidths;
+    private final Map<String, Double> cache = new ConcurrentHashMap<>();
+
+    private AntennaPatterns(Map<String, Double> beamwidths) {
+        this.beamwidths = beamwidths;
+    }
+
+    static AntennaPatterns empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Builds a table from Antenna File names to beamwidths. Throws IllegalArgumentException for a
+     * beamwidth outside (0, 360].
+     */
+    static AntennaPatterns of(Map<String, Double> beamwidthsByAntennaFile) {
+        Map<String, Double> beamwidths = new HashMap<>();
+        for (Map.Entry<String, Double> entry : beamwidthsByAntennaFile.entrySet()) {
+            double beamwidth = entry.getValue();
+            if (!(beamwidth > 0 && beamwidth <= 360)) {
+                throw new IllegalArgumentException("Invalid beamwidth " + beamwidth + " for \"" + entry.getKey() + "\", expected 0-360 degrees");
+            }
+            beamwidths.put(keyOf(entry.getKey()), beamwidth);
+        }
+        return new AntennaPatterns(beamwidths);
+    }
+
+    static String keyOf(String antennaFile) {
+        String key = antennaFile.trim().toLowerCase(Locale.ROOT);
+        key = EXTENSION.matcher(key).replaceFirst("");
+        return PORT_SUFFIX.matcher(key).replaceFirst("");
+    }
+
+    /**
+     * The beamwidth listed for {@code antennaFile}'s model, or {@link #DEFAULT_BEAMWIDTH}.
+     */
+    double beamwidthFor(String antennaFile) {
+        if (beamwidths.isEmpty() || antennaFile == null || antennaFile.isEmpty()) return DEFAULT_BEAMWIDTH;
+        Double cached = cache.get(antennaFile);
+        if (cached != null) return cached;
+        Double listed = beamwidths.get(keyOf(antennaFile));
+        double beamwidth = listed != null ? listed : DEFAULT_BEAMWIDTH;
+        if (cache.size() < MAX_CACHED_NAMES) cache.put(antennaFile, beamwidth);
+        return beamwidth;
+    }
+
+    // --- Pattern table file ---
+
+    /**
+     * The shared table: {@code -Dplanetkml.antennas=<path>} if set, otherwise
+     * {@code ~/.planetkml/antenna-patterns.tsv}.
+     */
+    static File defaultFile() {
+        String path = System.getProperty("planetkml.antennas");
+        if (path != null && !path.isEmpty()) return new File(path);
+        return new File(new File(System.getProperty("user.home"), ".planetkml"), "antenna-patterns.tsv");
+    }
+
+    /**
+     * Loads the shared table, or an empty one (every fan 65 degrees) if it does not exist.
+     */
+    static AntennaPatterns loadDefault() throws IOException {
+        File file = defaultFile();
+        return file.isFile() ? load(file) : empty();
+    }
+
+    /**
+     * Reads a table of {@code antenna file<TAB>beamwidth} lines; blank lines and {@code #} comments are skipped.
+     */
+    static AntennaPatterns load(File file) throws IOException {
+        Map<String, Double> beamwidths = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\t", -1);
+                try {
+                    if (fields.length != 2 || fields[0].trim().isEmpty()) throw new NumberFormatException();
+                    beamwidths.put(fields[0], Double.parseDouble(fields[1].trim()));
+                } catch (NumberFormatException e) {
+                    throw new IOException(file.getName() + " line " + lineNumber + ": expected antenna file<TAB>beamwidth");
+                }
+            }
+        }
+        try {
+            return of(beamwidths);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file.getName() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.echostar;
+
+import java.awt.Color;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Helper class to store user's KML choices for each band.
+ */
+class BandSettings {
+    private static final Color[] BRIGHT_COLORS = {Color.CYAN, Color.MAGENTA, Color.YELLOW, Color.GREEN, Color.ORANGE, Color.PINK};
+
+    boolean include = true;
+    Color color = Color.BLUE;
+    int size = 500; // Default size in meters
+    int transparency = 50; // Default transparency (0-100)
+
+    /**
+     * Returns the settings the customization dialog pre-fills for a band: a size by band family
+     * and the next color in the palette.
+     */
+    static BandSettings defaultFor(String band, int colorIndex) {
+        BandSettings settings = new BandSettings();
+        String upperBand = band.toUpperCase();
+        if (upperBand.contains("N71")) settings.size = 500;
+        else if (upperBand.contains("N70")) settings.size = 400;
+        else if (upperBand.contains("N66")) settings.size = 350;
+        else if (upperBand.contains("N29")) settings.size = 300;
+        else settings.size = 500;
+        settings.color = BRIGHT_COLORS[colorIndex % BRIGHT_COLORS.length];
+        return settings;
+    }
+
+    /**
+     * Default settings for every band, used when there is no dialog to ask (headless modes).
+     * Mirrors the dialog's map type so styles come out in the same order as a GUI export.
+     */
+    static Map<String, BandSettings> defaultsFor(Collection<String> bands) {
+        Map<String, BandSettings> settingsMap = new HashMap<>();
+        int colorIndex = 0;
+        for (String band : bands) {
+            settingsMap.put(band, defaultFor(band, colorIndex++));
+        }
+        return settingsMap;
+    }
+}
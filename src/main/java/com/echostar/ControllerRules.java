@@ -0,0 +1,345 @@
+package com.echostar;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * An immutable, compiled set of rules mapping an antenna's Electrical Controller to the tilt it
+ * drives ("LB Electrical Tilt" or "MB Electrical Tilt").
+ *
+ * Rules are checked in this order: an exact name, then the longest matching prefix, then the
+ * regex and frequency range rules in the order they were listed. For exact names, later rules
+ * replace earlier ones. Exact and prefix lookups use a hash map and a trie, so they cost
+ * O(controller name length) however many rules there are. Regex and range rules are a linear scan
+ * over those rules; the result is cached per controller name, and the cache is cleared when it
+ * fills, so only a run with more distinct names than that pays the scan repeatedly.
+ *
+ * A snapshot is compiled once per run and shared read-only by the parse and merge threads. The
+ * GUI, the headless modes and the watch service all read the same rules file, see
+ * {@link #defaultFile()}.
+ */
+final class ControllerRules {
+
+    enum Type { EXACT, PREFIX, REGEX, RANGE }
+
+    /**
+     * One rule as listed in the rules file or the Controllers tab.
+     */
+    static final class Rule {
+        final Type type;
+        final String pattern;
+        final String band;
+
+        Rule(Type type, String pattern, String band) {
+            this.type = type;
+            this.pattern = pattern;
+            this.band = band;
+        }
+    }
+
+    /**
+     * The shipped rules: the controller names seen in Planet exports so far. Frequency ranges such as
+     * {@code RANGE 600-1000 -> LB} are opt-in (see golden/controller-rules.tsv), since they give a
+     * tilt to controllers that previously matched nothing.
+     */
+    static final Object[][] DEFAULT_RULES = {
+        {"EXACT", "R1", "LB Electrical Tilt"}, {"EXACT", "R2", "LB Electrical Tilt"}, {"EXACT", "B", "MB Electrical Tilt"},
+        {"EXACT", "Controller_617-894_12", "LB Electrical Tilt"}, {"EXACT", "Controller_617-894_34", "LB Electrical Tilt"},
+        {"EXACT", "Controller 1", "LB Electrical Tilt"}, {"EXACT", "Controller_1695-2690_56", "MB Electrical Tilt"},
+        {"EXACT", "Controller_1695-2690_78", "MB Electrical Tilt"}, {"EXACT", "Controller 2", "MB Electrical Tilt"},
+        {"EXACT", "Controller 3", "MB Electrical Tilt"}, {"EXACT", "Port 1-2", "LB Electrical Tilt"},
+        {"EXACT", "Y1", "MB Electrical Tilt"}, {"EXACT", "Y2", "MB Electrical Tilt"}, {"EXACT", "Port 3-4", "MB Electrical Tilt"},
+        {"EXACT", "Port 5-6", "MB Electrical Tilt"}, {"EXACT", "Port 1-4", "LB Electrical Tilt"},
+        {"EXACT", "Port 5-8", "MB Electrical Tilt"}, {"EXACT", "Port 9-10", "MB Electrical Tilt"},
+        {"EXACT", "Port 3-4", "LB Electrical Tilt"}, {"EXACT", "Port 7-8", "MB Electrical Tilt"},
+        {"EXACT", "R1 LB Controller", "LB Electrical Tilt"}, {"EXACT", "R2 LB Controller", "LB Electrical Tilt"},
+        {"EXACT", "Y1 HB Controller", "MB Electrical Tilt"}, {"EXACT", "Y2 HB Controller", "MB Electrical Tilt"}
+    };
+
+    /** A MHz span written in a controller name, e.g. the "617-894" in "Controller_617-894_12". */
+    private static final Pattern FREQUENCY_SPAN = Pattern.compile("(\\d{3,5})\\s*-\\s*(\\d{3,5})");
+
+    /** Regex/range results cached before the cache is cleared and refilled. */
+    private static final int MAX_CACHED_NAMES = 4096;
+
+    private static final String FILE_HEADER = "# Electrical Controller rules: type<TAB>pattern<TAB>band, type is EXACT, PREFIX, REGEX or RANGE (MHz, e.g. 600-1000)";
+
+    private final List<Rule> rules;
+    private final Map<String, String> exact;
+    private final TrieNode prefixRoot;
+    private final List<Pattern> orderedPatterns;
+    private final List<int[]> orderedRanges;
+    private final List<String> orderedBands;
+    private final Map<String, String> orderedCache = new ConcurrentHashMap<>();
+
+    private ControllerRules(List<Rule> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        Map<String, String> exactBuilder = new HashMap<>();
+        TrieBuilder prefixBuilder = new TrieBuilder();
+        List<Pattern> orderedBuilder = new ArrayList<>();
+        List<int[]> rangeBuilder = new ArrayList<>();
+        List<String> bandBuilder = new ArrayList<>();
+        for (Rule rule : rules) {
+            if (rule.pattern.isEmpty()) continue;
+            switch (rule.type) {
+                case EXACT:
+                    exactBuilder.put(rule.pattern, rule.band);
+                    break;
+                case PREFIX:
+                    prefixBuilder.put(rule.pattern, rule.band);
+                    break;
+                case REGEX:
+                    try {
+                        orderedBuilder.add(Pattern.compile(rule.pattern));
+                    } catch (PatternSyntaxException e) {
+                        throw new IllegalArgumentException("Invalid controller regex \"" + rule.pattern + "\": " + e.getDescription());
+                    }
+                    rangeBuilder.add(null);
+                    bandBuilder.add(rule.band);
+                    break;
+                case RANGE:
+                    orderedBuilder.add(null);
+                    rangeBuilder.add(parseRange(rule.pattern));
+                    bandBuilder.add(rule.band);
+                    break;
+            }
+        }
+        this.exact = exactBuilder;
+        this.prefixRoot = prefixBuilder.freeze();
+        this.orderedPatterns = orderedBuilder;
+        this.orderedRanges = rangeBuilder;
+        this.orderedBands = bandBuilder;
+    }
+
+    /**
+     * Compiles {@code rules}. Throws IllegalArgumentException for a malformed regex or range.
+     */
+    static ControllerRules compile(List<Rule> rules) {
+        return new ControllerRules(rules);
+    }
+
+    static ControllerRules defaults() {
+        return compile(rulesOf(DEFAULT_RULES));
+    }
+
+    /**
+     * Converts rows of {type, pattern, band}, as held by the Controllers table, into rules.
+     * Rows with an unknown type or an empty pattern are skipped.
+     */
+    static List<Rule> rulesOf(Object[][] rows) {
+        List<Rule> rules = new ArrayList<>();
+        for (Object[] row : rows) {
+            String pattern = row[1] == null ? "" : row[1].toString();
+            Type type = typeOf(row[0] == null ? "" : row[0].toString());
+            if (type == null || pattern.isEmpty()) continue;
+            rules.add(new Rule(type, pattern, row[2] == null ? "" : row[2].toString()));
+        }
+        return rules;
+    }
+
+    /**
+     * The rules as table rows of {type, pattern, band}, in their original order.
+     */
+    Object[][] toRows() {
+        Object[][] rows = new Object[rules.size()][];
+        for (int i = 0; i < rows.length; i++) {
+            Rule rule = rules.get(i);
+            rows[i] = new Object[]{rule.type.name(), rule.pattern, rule.band};
+        }
+        return rows;
+    }
+
+    List<Rule> rules() {
+        return rules;
+    }
+
+    /**
+     * The tilt {@code controller} drives, or "" if no rule matches.
+     */
+    String bandFor(String controller) {
+        if (controller == null || controller.isEmpty()) return "";
+        String band = exact.get(controller);
+        if (band != null) return band;
+        band = prefixRoot.longestPrefix(controller);
+        if (band != null) return band;
+        if (orderedBands.isEmpty()) return "";
+        band = orderedCache.get(controller);
+        if (band == null) {
+            band = matchOrdered(controller);
+            // Clearing rather than refusing new entries keeps the names seen lately cached
+            if (orderedCache.size() >= MAX_CACHED_NAMES) orderedCache.clear();
+            orderedCache.put(controller, band);
+        }
+        return band;
+    }
+
+    private String matchOrdered(String controller) {
+        for (int i = 0; i < orderedBands.size(); i++) {
+            int[] range = orderedRanges.get(i);
+            if (range != null) {
+                if (inRange(controller, range)) return orderedBands.get(i);
+            } else {
+                if (orderedPatterns.get(i).matcher(controller).matches()) return orderedBands.get(i);
+            }
+        }
+        return "";
+    }
+
+    /**
+     * True when the controller name contains a MHz span lying entirely within {@code range}.
+     */
+    private static boolean inRange(String controller, int[] range) {
+        Matcher span = FREQUENCY_SPAN.matcher(controller);
+        while (span.find()) {
+            int low = Integer.parseInt(span.group(1));
+            int high = Integer.parseInt(span.group(2));
+            if (low <= high && low >= range[0] && high <= range[1]) return true;
+        }
+        return false;
+    }
+
+    private static int[] parseRange(String pattern) {
+        String[] bounds = pattern.split("-");
+        try {
+            if (bounds.length == 2) {
+                int low = Integer.parseInt(bounds[0].trim());
+                int high = Integer.parseInt(bounds[1].trim());
+                if (low <= high) return new int[]{low, high};
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the error below
+        }
+        throw new IllegalArgumentException("Invalid frequency range \"" + pattern + "\", expected e.g. 600-1000");
+    }
+
+    private static Type typeOf(String name) {
+        try {
+            return Type.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // --- Rules file ---
+
+    /**
+     * The shared rules file: {@code -Dplanetkml.rules=<path>} if set, otherwise
+     * {@code ~/.planetkml/controller-rules.tsv}.
+     */
+    static File defaultFile() {
+        String path = System.getProperty("planetkml.rules");
+        if (path != null && !path.isEmpty()) return new File(path);
+        return new File(new File(System.getProperty("user.home"), ".planetkml"), "controller-rules.tsv");
+    }
+
+    /**
+     * Loads the shared rules file, or the shipped defaults if it does not exist yet.
+     */
+    static ControllerRules loadDefault() throws IOException {
+        File file = defaultFile();
+        return file.isFile() ? load(file) : defaults();
+    }
+
+    static ControllerRules load(File file) throws IOException {
+        List<Rule> rules = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\t", -1);
+                Type type = typeOf(fields[0]);
+                if (fields.length != 3 || type == null || fields[1].isEmpty()) {
+                    throw new IOException(file.getName() + " line " + lineNumber + ": expected type<TAB>pattern<TAB>band");
+                }
+                rules.add(new Rule(type, fields[1], fields[2]));
+            }
+        }
+        try {
+            return compile(rules);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    void save(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) Files.createDirectories(dir.toPath());
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(FILE_HEADER + "\n");
+            for (Rule rule : rules) {
+                writer.write(rule.type.name() + "\t" + rule.pattern.replace('\t', ' ') + "\t" + rule.band.replace('\t', ' ') + "\n");
+            }
+        }
+    }
+
+    // --- Prefix trie ---
+
+    /**
+     * A frozen trie node; children are kept sorted by character for a binary search per step.
+     */
+    private static final class TrieNode {
+        final char[] keys;
+        final TrieNode[] children;
+        final String band;
+
+        TrieNode(char[] keys, TrieNode[] children, String band) {
+            this.keys = keys;
+            this.children = children;
+            this.band = band;
+        }
+
+        String longestPrefix(String name) {
+            String best = band;
+            TrieNode node = this;
+            for (int i = 0; i < name.length(); i++) {
+                int index = Arrays.binarySearch(node.keys, name.charAt(i));
+                if (index < 0) break;
+                node = node.children[index];
+                if (node.band != null) best = node.band;
+            }
+            return best;
+        }
+    }
+
+    private static final class TrieBuilder {
+        final TreeMap<Character, TrieBuilder> children = new TreeMap<>();
+        String band;
+
+        void put(String prefix, String value) {
+            TrieBuilder node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new TrieBuilder());
+            }
+            node.band = value;
+        }
+
+        TrieNode freeze() {
+            char[] keys = new char[children.size()];
+            TrieNode[] frozen = new TrieNode[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, TrieBuilder> child : children.entrySet()) {
+                keys[i] = child.getKey();
+                frozen[i++] = child.getValue().freeze();
+            }
+            return new TrieNode(keys, frozen, band);
+        }
+    }
+}
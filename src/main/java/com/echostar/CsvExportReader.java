@@ -0,0 +1,443 @@
+package com.echostar;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads a Planet export saved as CSV: a directory or .zip holding one file per sheet
+ * ({@code Antennas.csv}, {@code Sectors.csv}, ...). Rows come out exactly as the xlsx SAX path
+ * produces them, so the merge and KML stages can't tell the two inputs apart.
+ *
+ * Each file is memory-mapped in fixed-size chunks and parsed in parallel. A line break only ends a
+ * record outside a quoted field, and a quote only opens one at the start of a field: Planet writes
+ * inch marks and quotes inside unquoted names as they are, and the parser reads those literally.
+ * So a first pass runs the parser's field states over every chunk from each possible starting state,
+ * which chained in file order gives the state each chunk really starts in and from that, where its
+ * first whole record begins. Chunks are then parsed in batches and handed to the row sink in file
+ * order, keeping memory to a few chunks for streaming callers. Zip entries are extracted to a
+ * temporary file first, as compressed data can't be mapped.
+ */
+class CsvExportReader {
+
+    /**
+     * Nominal chunk size; records are never split, so actual chunks end at the next record break.
+     * {@code -Dplanetkml.csvChunkBytes} overrides it, so tests can put many boundaries in a small file.
+     */
+    static final int CHUNK_BYTES = Math.max(1, Integer.getInteger("planetkml.csvChunkBytes", 8 << 20));
+
+    // Where parseRecord is after a byte: at the start of a field, in an unquoted field (or after a
+    // quoted one's closing quote), in a quoted field, or on a quote in one that may be an escape
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    /**
+     * Whether {@code file} is a CSV export (a directory or a .zip) rather than an .xlsx workbook.
+     */
+    static boolean isCsvExport(File file) {
+        return file.isDirectory() || file.getName().toLowerCase().endsWith(".zip");
+    }
+
+    static SheetData readSheet(File export, String sheetName) throws IOException {
+        List<Map<String, String>> tableData = new ArrayList<>();
+        List<String> headers = streamSheet(export, sheetName, tableData::add);
+        return headers == null ? null : new SheetData(headers, tableData);
+    }
+
+    /**
+     * Parses {@code <sheetName>.csv} (case-insensitive) from the export and hands each data row to
+     * {@code rowSink}, in file order and on the calling thread. Returns the headers, or null if the
+     * export has no such file.
+     */
+    static List<String> streamSheet(File export, String sheetName, Consumer<Map<String, String>> rowSink) throws IOException {
+        String fileName = sheetName + ".csv";
+        if (export.isDirectory()) {
+            File[] matches = export.listFiles((dir, name) -> name.equalsIgnoreCase(fileName));
+            if (matches == null || matches.length == 0) {
+                System.err.println("Sheet '" + sheetName + "' not found.");
+                return null;
+            }
+            return streamFile(matches[0], rowSink);
+        }
+        try (ZipFile zip = new ZipFile(export)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String entryName = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+                if (entry.isDirectory() || !entryName.equalsIgnoreCase(fileName)) continue;
+                File extracted = File.createTempFile("planetkml-" + sheetName, ".csv");
+                try {
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        Files.copy(in, extracted.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    return streamFile(extracted, rowSink);
+                } finally {
+                    if (!extracted.delete()) extracted.deleteOnExit();
+                }
+            }
+        }
+        System.err.println("Sheet '" + sheetName + "' not found.");
+        return null;
+    }
+
+    static List<String> streamFile(File csvFile, Consumer<Map<String, String>> rowSink) throws IOException {
+        return streamFile(csvFile, CHUNK_BYTES, rowSink);
+    }
+
+    static List<String> streamFile(File csvFile, int chunkBytes, Consumer<Map<String, String>> rowSink) throws IOException {
+        try (FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunkCount = (int) Math.max(1, (size + chunkBytes - 1) / chunkBytes);
+
+            // Pass 1: the state each start state leaves every nominal chunk in; chained from the
+            // start of the file (after any byte order mark) they give the state each chunk starts in
+            int bomLength = hasByteOrderMark(channel, size) ? 3 : 0;
+            int[][] transitions = new int[chunkCount][];
+            parallel(chunkCount, k -> transitions[k] = transitions(map(channel, (long) k * chunkBytes,
+                Math.min(chunkBytes, size - (long) k * chunkBytes)), k == 0 ? bomLength : 0));
+            int[] startStates = new int[chunkCount];
+            for (int k = 1; k < chunkCount; k++) {
+                startStates[k] = transitions[k - 1][startStates[k - 1]];
+            }
+
+            // Pass 2: each chunk really starts after the first record break at or after its nominal start
+            long[] starts = new long[chunkCount + 1];
+            starts[chunkCount] = size;
+            parallel(chunkCount, k -> starts[k] = k == 0 ? 0 : firstRecordStart(channel, (long) k * chunkBytes, chunkBytes, size, startStates[k]));
+            for (int k = chunkCount - 1; k > 0; k--) {
+                if (starts[k] < 0) starts[k] = starts[k + 1]; // A quoted field spans the whole chunk
+            }
+
+            // The header is the first non-blank record; data starts after it
+            byte[] first = read(channel, 0, starts[1]);
+            int offset = bomLength;
+            List<String> headers = new ArrayList<>();
+            List<String> record = new ArrayList<>();
+            while (headers.isEmpty() && offset < first.length) {
+                offset = parseRecord(first, offset, first.length, record);
+                if (!record.stream().allMatch(String::isEmpty)) {
+                    for (String header : record) headers.add(header.trim());
+                }
+            }
+            long dataStart = offset;
+            if (headers.isEmpty()) return headers;
+
+            String[] keys = headers.toArray(new String[0]);
+            int batchSize = Math.max(2, 2 * ForkJoinPool.getCommonPoolParallelism());
+            for (int batchStart = 0; batchStart < chunkCount; batchStart += batchSize) {
+                int batchEnd = Math.min(chunkCount, batchStart + batchSize);
+                List<List<Map<String, String>>> parsed = new ArrayList<>();
+                for (int k = batchStart; k < batchEnd; k++) parsed.add(null);
+                int base = batchStart;
+                parallel(batchEnd - batchStart, i -> {
+                    int k = base + i;
+                    long from = Math.max(starts[k], k == 0 ? dataStart : 0);
+                    long to = Math.max(from, starts[k + 1]);
+                    parsed.set(i, parseRows(read(channel, from, to), keys));
+                });
+                for (List<Map<String, String>> rows : parsed) rows.forEach(rowSink);
+            }
+            return headers;
+        }
+    }
+
+    private interface ChunkTask {
+        void run(int index) throws IOException;
+    }
+
+    /**
+     * Runs {@code task} for 0..count-1 on the common pool, rethrowing the first I/O error.
+     */
+    private static void parallel(int count, ChunkTask task) throws IOException {
+        try {
+            IntStream.range(0, count).parallel().forEach(index -> {
+                try {
+                    task.run(index);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    private static byte[] read(FileChannel channel, long from, long to) throws IOException {
+        if (to - from > Integer.MAX_VALUE - 8) throw new IOException("CSV record over 2 GB at byte " + from);
+        byte[] bytes = new byte[(int) (to - from)];
+        if (bytes.length > 0) map(channel, from, bytes.length).get(bytes);
+        return bytes;
+    }
+
+    private static boolean hasByteOrderMark(FileChannel channel, long size) throws IOException {
+        if (size < 3) return false;
+        byte[] head = read(channel, 0, 3);
+        return (head[0] & 0xff) == 0xef && (head[1] & 0xff) == 0xbb && (head[2] & 0xff) == 0xbf;
+    }
+
+    /**
+     * The state after {@code b} in {@code state}, following parseRecord: a quote only opens a field
+     * at its start, and a line break only ends a record outside a quoted field.
+     */
+    private static int next(int state, byte b) {
+        switch (state) {
+            case QUOTED:
+                return b == '"' ? QUOTE_IN_QUOTED : QUOTED;
+            case UNQUOTED:
+                return b == ',' || b == '\n' ? FIELD_START : UNQUOTED;
+            case QUOTE_IN_QUOTED:
+                // A second quote is an escape; anything else closed the field
+                return b == '"' ? QUOTED : b == ',' || b == '\n' ? FIELD_START : UNQUOTED;
+            default:
+                return b == '"' ? QUOTED : b == ',' || b == '\n' ? FIELD_START : UNQUOTED;
+        }
+    }
+
+    /**
+     * The state the bytes of {@code buffer} from {@code from} end in, for each state they could start
+     * in. Other bytes than quotes, commas and line breaks give the same state however many there are
+     * in a row, so a run of them costs one step.
+     */
+    private static int[] transitions(ByteBuffer buffer, int from) {
+        int[] states = {FIELD_START, UNQUOTED, QUOTED, QUOTE_IN_QUOTED};
+        boolean afterPlainByte = false;
+        for (int i = from, n = buffer.limit(); i < n; i++) {
+            byte b = buffer.get(i);
+            boolean plain = b != '"' && b != ',' && b != '\n';
+            if (plain && afterPlainByte) continue;
+            for (int s = 0; s < states.length; s++) {
+                states[s] = next(states[s], b);
+            }
+            afterPlainByte = plain;
+        }
+        return states;
+    }
+
+    /**
+     * Offset just past the first record break within the chunk at {@code position}, which starts in
+     * {@code state}, or -1 if there is none before the next chunk.
+     */
+    private static long firstRecordStart(FileChannel channel, long position, int chunkBytes, long size, int state) throws IOException {
+        MappedByteBuffer buffer = map(channel, position, Math.min(chunkBytes, size - position));
+        for (int i = 0, n = buffer.limit(); i < n; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' && state != QUOTED) return position + i + 1;
+            state = next(state, b);
+        }
+        return -1;
+    }
+
+    /**
+     * Parses whole records in {@code bytes} into row maps keyed by {@code keys}, trimmed like the SAX
+     * path: missing trailing fields are blank, extra ones dropped, empty lines skipped.
+     */
+    private static List<Map<String, String>> parseRows(byte[] bytes, String[] keys) {
+        List<Map<String, String>> rows = new ArrayList<>(bytes.length / 128 + 1);
+        List<String> record = new ArrayList<>(keys.length);
+        int offset = 0;
+        while (offset < bytes.length) {
+            offset = parseRecord(bytes, offset, bytes.length, record);
+            if (record.size() == 1 && record.get(0).isEmpty()) continue;
+            Map<String, String> row = new LinkedHashMap<>(keys.length * 4 / 3 + 1);
+            for (int i = 0; i < keys.length; i++) {
+                row.put(keys[i], i < record.size() ? record.get(i).trim() : "");
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Parses one record starting at {@code offset} into {@code record} and returns the offset of the
+     * next one. Accepts LF or CRLF line ends and {@code ""} escapes inside quoted fields.
+     */
+    private static int parseRecord(byte[] bytes, int offset, int end, List<String> record) {
+        record.clear();
+        int i = offset;
+        while (true) {
+            if (i < end && bytes[i] == '"') {
+                // Quoted field: find the closing quote first, then copy out escapes only if there were any
+                int start = ++i;
+                boolean escaped = false;
+                while (i < end) {
+                    if (bytes[i] == '"') {
+                        if (i + 1 < end && bytes[i + 1] == '"') {
+                            escaped = true;
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                if (!escaped) {
+                    record.add(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                } else {
+                    byte[] unescaped = new byte[i - start];
+                    int length = 0;
+                    for (int j = start; j < i; j++) {
+                        unescaped[length++] = bytes[j];
+                        if (bytes[j] == '"') j++;
+                    }
+                    record.add(new String(unescaped, 0, length, StandardCharsets.UTF_8));
+                }
+                if (i < end) i++; // Closing quote; anything up to the separator is ignored
+                while (i < end && bytes[i] != ',' && bytes[i] != '\n') i++;
+            } else {
+                int start = i;
+                while (i < end && bytes[i] != ',' && bytes[i] != '\n') i++;
+                int fieldEnd = i > start && bytes[i - 1] == '\r' && (i == end || bytes[i] == '\n') ? i - 1 : i;
+                record.add(new String(bytes, start, fieldEnd - start, StandardCharsets.UTF_8));
+            }
+            if (i >= end) return end;
+            if (bytes[i++] == '\n') return i;
+        }
+    }
+
+    /**
+     * Writes the sheets the processor reads from an .xlsx export as {@code <Sheet>.csv} files in
+     * {@code outDir}, values as the SAX path reads them. Returns the total bytes written.
+     */
+    static long convert(File excelFile, File outDir) throws Exception {
+        Files.createDirectories(outDir.toPath());
+        long bytes = 0;
+        for (String sheetName : PlanetExportProcessor.SHEETS_TO_READ) {
+            File csvFile = new File(outDir, sheetName + ".csv");
+            boolean[] headerWritten = {false};
+            String[][] keys = {null};
+            List<String> headers;
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(csvFile.toPath()), StandardCharsets.UTF_8), 1 << 16)) {
+                headers = PlanetExportProcessor.streamSheetWithSAX(excelFile, sheetName, row -> {
+                    try {
+                        if (!headerWritten[0]) {
+                            keys[0] = row.keySet().toArray(new String[0]);
+                            TableExporter.writeCsvHeader(writer, Arrays.asList(keys[0]));
+                            headerWritten[0] = true;
+                        }
+                        TableExporter.writeCsvRow(writer, keys[0], row);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                if (headers != null && !headerWritten[0]) TableExporter.writeCsvHeader(writer, headers);
+            }
+            if (headers == null) {
+                Files.delete(csvFile.toPath());
+            } else {
+                bytes += csvFile.length();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Usage: {@code --xlsx-to-csv <export.xlsx> <outDir>}.
+     */
+    static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: --xlsx-to-csv <export.xlsx> <outDir>");
+            System.exit(2);
+        }
+        long start = System.currentTimeMillis();
+        long bytes = convert(new File(args[1]), new File(args[2]));
+        System.out.println("Wrote " + (bytes >> 20) + " MB of CSV to " + args[2] + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Usage: {@code --bench-csv <export.xlsx> [--runs N]}. Converts the export to CSV, then times the
+     * xlsx and CSV parse-and-merge on the same data and checks both give the same KML.
+     */
+    static void bench(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: --bench-csv <export.xlsx> [--runs N]");
+            System.exit(2);
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        int runs = Integer.parseInt(options.getOrDefault("--runs", "3"));
+        File excelFile = new File(args[1]);
+        File csvDir = Files.createTempDirectory("planetkml-csv").toFile();
+        try {
+            long convertStart = System.currentTimeMillis();
+            long csvBytes = convert(excelFile, csvDir);
+            System.out.println("Converted to " + (csvBytes >> 20) + " MB of CSV (xlsx " + (excelFile.length() >> 20) + " MB) in "
+                + (System.currentTimeMillis() - convertStart) + " ms; " + ForkJoinPool.getCommonPoolParallelism() + " parser threads");
+
+            ControllerRules rules = ControllerRules.defaults();
+            String xlsxKml = kmlDigest(excelFile, rules);
+            String csvKml = kmlDigest(csvDir, rules);
+            System.out.println("KML " + (xlsxKml.equals(csvKml) ? "identical" : "DIFFERS") + ": xlsx " + xlsxKml + ", csv " + csvKml);
+
+            long[] xlsxMillis = new long[runs];
+            long[] csvMillis = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                xlsxMillis[run] = timeParse(excelFile, rules);
+                csvMillis[run] = timeParse(csvDir, rules);
+            }
+            Arrays.sort(xlsxMillis);
+            Arrays.sort(csvMillis);
+            System.out.println(String.format("parse + merge, median of %d: xlsx %d ms, csv %d ms (%.1fx)", runs,
+                xlsxMillis[runs / 2], csvMillis[runs / 2], xlsxMillis[runs / 2] / (double) Math.max(1, csvMillis[runs / 2])));
+        } finally {
+            File[] files = csvDir.listFiles();
+            if (files != null) for (File file : files) Files.deleteIfExists(file.toPath());
+            Files.deleteIfExists(csvDir.toPath());
+        }
+    }
+
+    private static long timeParse(File export, ControllerRules rules) throws Exception {
+        System.gc();
+        long start = System.currentTimeMillis();
+        new PlanetExportProcessor(rules).process(export, message -> { });
+        return System.currentTimeMillis() - start;
+    }
+
+    private static String kmlDigest(File export, ControllerRules rules) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (OutputStream out = new DigestOutputStream(new OutputStream() {
+            @Override public void write(int b) { }
+            @Override public void write(byte[] b, int off, int len) { }
+        }, digest)) {
+            HeadlessExport.exportKml(export, out, rules, FanGeometry.defaults(), 0, message -> { });
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
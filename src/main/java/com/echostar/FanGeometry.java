@@ -0,0 +1,173 @@
+package com.echostar;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How sector fans are drawn: each fan's beamwidth comes from its antenna's pattern (see
+ * {@link AntennaPatterns}), and its arc gets just enough vertices to stay within
+ * {@code maxArcErrorMeters} of the true circle. Each chord sits at most r(1 - cos(step / 2)) inside
+ * the arc, so small fans get few vertices and long or wide fans get more.
+ *
+ * With a {@code vertexBudget}, {@link #fittedTo} raises the arc error for the whole export until
+ * every fan fits in that many coordinates, so huge markets degrade evenly instead of being cut off.
+ * A fan is never drawn with more than {@link #MAX_ARC_SEGMENTS} segments, so a very long or wide one
+ * can miss the error bound; {@link #clampedFans} counts those so the export can say so.
+ */
+final class FanGeometry {
+
+    /** Default chord-to-arc error; a 500 m, 65 degree fan gets 7 arc segments. */
+    static final double DEFAULT_MAX_ARC_ERROR_METERS = 2.0;
+
+    static final int MIN_ARC_SEGMENTS = 2;
+    static final int MAX_ARC_SEGMENTS = 90;
+
+    final AntennaPatterns antennaPatterns;
+    final double maxArcErrorMeters;
+    /** Most coordinates all sector polygons of one export may use; 0 for no limit. */
+    final long vertexBudget;
+
+    FanGeometry(AntennaPatterns antennaPatterns, double maxArcErrorMeters, long vertexBudget) {
+        if (!(maxArcErrorMeters > 0)) throw new IllegalArgumentException("Arc error must be positive: " + maxArcErrorMeters);
+        this.antennaPatterns = antennaPatterns;
+        this.maxArcErrorMeters = maxArcErrorMeters;
+        this.vertexBudget = Math.max(0, vertexBudget);
+    }
+
+    /**
+     * Default resolution, every fan 65 degrees.
+     */
+    static FanGeometry defaults() {
+        return new FanGeometry(AntennaPatterns.empty(), DEFAULT_MAX_ARC_ERROR_METERS, 0);
+    }
+
+    /**
+     * Default resolution with the shared antenna-pattern table.
+     */
+    static FanGeometry loadDefault() throws IOException {
+        return new FanGeometry(AntennaPatterns.loadDefault(), DEFAULT_MAX_ARC_ERROR_METERS, 0);
+    }
+
+    FanGeometry withResolution(double maxArcErrorMeters, long vertexBudget) {
+        return new FanGeometry(antennaPatterns, maxArcErrorMeters, vertexBudget);
+    }
+
+    double beamwidthOf(Map<String, String> sectorRow) {
+        return antennaPatterns.beamwidthFor(sectorRow.get("Antenna File"));
+    }
+
+    int arcSegments(double range, double beamwidth) {
+        return arcSegments(range, beamwidth, maxArcErrorMeters);
+    }
+
+    static int arcSegments(double range, double beamwidth, double maxArcErrorMeters) {
+        return (int) Math.max(MIN_ARC_SEGMENTS, Math.min(MAX_ARC_SEGMENTS, segmentsNeeded(range, beamwidth, maxArcErrorMeters)));
+    }
+
+    /**
+     * Segments that keep the arc within {@code maxArcErrorMeters}, before the min/max clamp.
+     */
+    private static double segmentsNeeded(double range, double beamwidth, double maxArcErrorMeters) {
+        if (maxArcErrorMeters >= range) return MIN_ARC_SEGMENTS;
+        double maxStepDegrees = Math.toDegrees(2 * Math.acos(1 - maxArcErrorMeters / range));
+        return Math.ceil(beamwidth / maxStepDegrees - 1e-9);
+    }
+
+    /**
+     * Coordinates in one fan polygon: the site, the arc vertices and the site again to close it.
+     */
+    static int coordinatesPerFan(int arcSegments) {
+        return arcSegments + 3;
+    }
+
+    /**
+     * Fans per band and antenna file, counted as the sectors are grouped by band so that sizing the
+     * vertex budget needs no further pass over the rows (on the out-of-core path, a re-read of every
+     * band file). Exports only have a handful of antenna files per band.
+     */
+    static final class FanCounts {
+        private final Map<String, Map<String, Long>> byBand = new HashMap<>();
+
+        void add(String band, String antennaFile) {
+            byBand.computeIfAbsent(band, key -> new HashMap<>()).merge(antennaFile == null ? "" : antennaFile, 1L, Long::sum);
+        }
+
+        /**
+         * Counts rows already grouped in memory, where one more pass costs little.
+         */
+        static FanCounts of(Map<String, ? extends Iterable<Map<String, String>>> sectorsByBand) {
+            FanCounts counts = new FanCounts();
+            for (Map.Entry<String, ? extends Iterable<Map<String, String>>> band : sectorsByBand.entrySet()) {
+                for (Map<String, String> row : band.getValue()) {
+                    counts.add(band.getKey(), row.get("Antenna File"));
+                }
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * This geometry, or one with the smallest larger arc error whose fans for the included bands fit
+     * the vertex budget.
+     */
+    FanGeometry fittedTo(FanCounts fans, Map<String, BandSettings> bandSettings) {
+        if (vertexBudget <= 0) return this;
+        Map<Integer, Map<Double, Long>> fanCounts = byRangeAndBeamwidth(fans, bandSettings);
+        double maxRange = 0;
+        for (int range : fanCounts.keySet()) maxRange = Math.max(maxRange, range);
+        if (coordinates(fanCounts, maxArcErrorMeters) <= vertexBudget) return this;
+        if (coordinates(fanCounts, maxRange) > vertexBudget) {
+            System.err.println("Vertex budget " + vertexBudget + " is below " + coordinates(fanCounts, maxRange) + ", the minimum for these fans; using the minimum.");
+            return new FanGeometry(antennaPatterns, Math.max(maxRange, maxArcErrorMeters), 0);
+        }
+        double low = maxArcErrorMeters;
+        double high = maxRange;
+        for (int i = 0; i < 50 && high - low > 0.01; i++) {
+            double middle = (low + high) / 2;
+            if (coordinates(fanCounts, middle) <= vertexBudget) high = middle;
+            else low = middle;
+        }
+        return new FanGeometry(antennaPatterns, high, 0);
+    }
+
+    /**
+     * How many fans of the included bands need more than {@link #MAX_ARC_SEGMENTS} segments at this
+     * arc error, and so are drawn further than that from the true arc.
+     */
+    long clampedFans(FanCounts fans, Map<String, BandSettings> bandSettings) {
+        long clamped = 0;
+        for (Map.Entry<Integer, Map<Double, Long>> range : byRangeAndBeamwidth(fans, bandSettings).entrySet()) {
+            for (Map.Entry<Double, Long> beamwidth : range.getValue().entrySet()) {
+                if (segmentsNeeded(range.getKey(), beamwidth.getKey(), maxArcErrorMeters) > MAX_ARC_SEGMENTS) clamped += beamwidth.getValue();
+            }
+        }
+        return clamped;
+    }
+
+    /**
+     * Fan count per (range, beamwidth) for the included bands; markets only have a handful of distinct pairs.
+     */
+    private Map<Integer, Map<Double, Long>> byRangeAndBeamwidth(FanCounts fans, Map<String, BandSettings> bandSettings) {
+        Map<Integer, Map<Double, Long>> fanCounts = new HashMap<>();
+        for (Map.Entry<String, Map<String, Long>> band : fans.byBand.entrySet()) {
+            BandSettings settings = bandSettings.get(band.getKey());
+            if (settings == null || !settings.include) continue;
+            Map<Double, Long> byBeamwidth = fanCounts.computeIfAbsent(settings.size, size -> new HashMap<>());
+            for (Map.Entry<String, Long> antennaFile : band.getValue().entrySet()) {
+                byBeamwidth.merge(antennaPatterns.beamwidthFor(antennaFile.getKey()), antennaFile.getValue(), Long::sum);
+            }
+        }
+        return fanCounts;
+    }
+
+    private static long coordinates(Map<Integer, Map<Double, Long>> fanCounts, double maxArcErrorMeters) {
+        long total = 0;
+        for (Map.Entry<Integer, Map<Double, Long>> range : fanCounts.entrySet()) {
+            for (Map.Entry<Double, Long> beamwidth : range.getValue().entrySet()) {
+                total += beamwidth.getValue() * coordinatesPerFan(arcSegments(range.getKey(), beamwidth.getKey(), maxArcErrorMeters));
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,134 @@
+package com.echostar;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Export-to-KML without the GUI, using the default band settings. Runs in memory, or through
+ * {@link OutOfCorePipeline} when a memory budget is given; both produce the same file.
+ */
+class HeadlessExport {
+
+    /**
+     * Timings and counts for one export.
+     */
+    static class Stats {
+        long parseMillis;
+        long kmlMillis;
+        int siteCount;
+        long sectorCount;
+        /** Fans drawn with fewer arc segments than the arc error needs; see FanGeometry.clampedFans. */
+        long clampedFans;
+        boolean outOfCore;
+    }
+
+    /**
+     * Writes the KML for {@code excelFile} to {@code kmlFile}. A {@code memoryBudgetBytes} of 0 or
+     * less runs the in-memory path. The file is written under a temporary name and renamed when complete.
+     */
+    static Stats exportKml(File excelFile, File kmlFile, ControllerRules controllerRules, FanGeometry fanGeometry, long memoryBudgetBytes, Consumer<String> progress) throws Exception {
+        File tempFile = new File(kmlFile.getPath() + ".tmp");
+        try {
+            Stats stats;
+            try (OutputStream out = Files.newOutputStream(tempFile.toPath())) {
+                stats = exportKml(excelFile, out, controllerRules, fanGeometry, memoryBudgetBytes, progress);
+            }
+            Files.move(tempFile.toPath(), kmlFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return stats;
+        } finally {
+            // Only still there if the export failed
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * Writes the KML for {@code excelFile} to {@code out} as UTF-8. {@code out} is flushed but not closed.
+     */
+    static Stats exportKml(File excelFile, OutputStream out, ControllerRules controllerRules, FanGeometry fanGeometry, long memoryBudgetBytes, Consumer<String> progress) throws Exception {
+        Stats stats = new Stats();
+        stats.outOfCore = memoryBudgetBytes > 0;
+        long start = System.currentTimeMillis();
+        if (!stats.outOfCore) {
+            PlanetExportProcessor.Result result = new PlanetExportProcessor(controllerRules).process(excelFile, progress);
+            stats.parseMillis = System.currentTimeMillis() - start;
+            requireData(result.siteData, result.sectorsData != null);
+            stats.siteCount = result.siteData.tableData.size();
+            stats.sectorCount = result.sectorsData.tableData.size();
+
+            long kmlStart = System.currentTimeMillis();
+            Set<String> uniqueBands = result.sectorsData.tableData.stream().map(row -> row.getOrDefault("Band Name", "Unknown")).collect(Collectors.toCollection(LinkedHashSet::new));
+            Writer writer = newWriter(out);
+            stats.clampedFans = new KmlWriter(BandSettings.defaultsFor(uniqueBands), fanGeometry).writeDocument(writer, result.siteData.tableData,
+                KmlWriter.groupByBand(result.sectorsData.tableData), uniqueBands, count -> { });
+            writer.flush();
+            stats.kmlMillis = System.currentTimeMillis() - kmlStart;
+        } else {
+            File tempDir = new File(System.getProperty("java.io.tmpdir"));
+            try (OutOfCorePipeline pipeline = new OutOfCorePipeline(controllerRules, memoryBudgetBytes, tempDir)) {
+                OutOfCorePipeline.Result result = pipeline.process(excelFile, progress);
+                stats.parseMillis = System.currentTimeMillis() - start;
+                requireData(result.siteData, result.sectorsByBand != null);
+                stats.siteCount = result.siteData.tableData.size();
+                stats.sectorCount = result.sectorCount;
+
+                long kmlStart = System.currentTimeMillis();
+                Writer writer = newWriter(out);
+                stats.clampedFans = new KmlWriter(BandSettings.defaultsFor(result.uniqueBands), fanGeometry).writeDocument(writer, result.siteData.tableData,
+                    result.sectorsByBand, result.fanCounts, result.uniqueBands, Collections.<PciConflictAnalyzer.Conflict>emptyList(), count -> { });
+                writer.flush();
+                stats.kmlMillis = System.currentTimeMillis() - kmlStart;
+            }
+        }
+        return stats;
+    }
+
+    private static void requireData(SheetData siteData, boolean haveSectors) throws IOException {
+        if (siteData == null || !haveSectors) {
+            throw new IOException("Export is missing one of the required sheets");
+        }
+    }
+
+    private static Writer newWriter(OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * Usage: {@code --kml <export.xlsx> <output.kml> [--memory-budget-mb M] [--max-arc-error-m E] [--vertex-budget V]}.
+     * Fans use the shared antenna-pattern table.
+     */
+    static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: --kml <export.xlsx> <output.kml> [--memory-budget-mb M] [--max-arc-error-m E] [--vertex-budget V]");
+            System.exit(2);
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 3; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        long budgetBytes = (long) (Double.parseDouble(options.getOrDefault("--memory-budget-mb", "0")) * (1 << 20));
+        FanGeometry fanGeometry = FanGeometry.loadDefault().withResolution(
+            Double.parseDouble(options.getOrDefault("--max-arc-error-m", String.valueOf(FanGeometry.DEFAULT_MAX_ARC_ERROR_METERS))),
+            Long.parseLong(options.getOrDefault("--vertex-budget", "0")));
+        Stats stats = exportKml(new File(args[1]), new File(args[2]), ControllerRules.loadDefault(), fanGeometry, budgetBytes, System.out::println);
+        if (stats.clampedFans > 0) {
+            System.err.println(stats.clampedFans + " sector fans need more than " + FanGeometry.MAX_ARC_SEGMENTS + " arc segments to stay within the arc error; "
+                + "they are drawn with " + FanGeometry.MAX_ARC_SEGMENTS + " and may be off by more.");
+        }
+        System.out.println("Wrote " + args[2] + ": " + stats.siteCount + " sites, " + stats.sectorCount + " sectors, parse " + stats.parseMillis + " ms, kml " + stats.kmlMillis + " ms" + (stats.outOfCore ? " (out-of-core)" : "")
+            + (stats.clampedFans > 0 ? ", " + stats.clampedFans + " fans capped at " + FanGeometry.MAX_ARC_SEGMENTS + " arc segments" : ""));
+    }
+}
@@ -0,0 +1,409 @@
+package com.echostar;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Embedded HTTP server that serves only the part of the network Google Earth is looking at.
+ *
+ * Google Earth loads the launcher KML, whose NetworkLink refreshes {@code /kml} with the view's
+ * bounding box whenever the camera stops. The server answers from a grid index over the loaded
+ * sites and sectors and renders the visible fans and labels with {@link KmlWriter}, so the styling
+ * matches a static export. Rendered responses are kept in an LRU cache keyed by the bbox snapped
+ * to a zoom-dependent bucket plus the band selection. Binds to the loopback interface only.
+ */
+class KmlTileServer {
+
+    static final int DEFAULT_PORT = 8765;
+    static final int DEFAULT_MAX_SECTORS = 20000;
+    /** Fan coordinates per tile; a crowded zoomed-out view gets coarser arcs, a zoomed-in one full detail. */
+    static final long DEFAULT_TILE_VERTEX_BUDGET = 120_000;
+    private static final int CACHE_ENTRIES = 256;
+    private static final double CELL_DEGREES = 0.01;
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    /**
+     * Uniform lat/lon grid mapping each cell to the indexes of the rows whose point falls in it.
+     */
+    private static class GridIndex {
+        private final Map<Long, int[]> cells;
+        private final int size;
+
+        GridIndex(List<Map<String, String>> rows) {
+            Map<Long, List<Integer>> building = new HashMap<>();
+            int indexed = 0;
+            for (int i = 0; i < rows.size(); i++) {
+                double[] point = pointOf(rows.get(i));
+                if (point == null) continue;
+                building.computeIfAbsent(cellKey(cellOf(point[0]), cellOf(point[1])), k -> new ArrayList<>()).add(i);
+                indexed++;
+            }
+            cells = new HashMap<>(building.size() * 2);
+            for (Map.Entry<Long, List<Integer>> entry : building.entrySet()) {
+                cells.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+            }
+            size = indexed;
+        }
+
+        /** Row indexes in ascending order whose point lies in the cells covering the box. */
+        int[] query(double south, double west, double north, double east) {
+            long rowsSpan = (long) cellOf(north) - cellOf(south) + 1;
+            long colsSpan = (long) cellOf(east) - cellOf(west) + 1;
+            List<int[]> hits = new ArrayList<>();
+            if (rowsSpan * colsSpan > cells.size()) {
+                // A zoomed-out view covers more cells than exist; walking the occupied cells is cheaper
+                for (Map.Entry<Long, int[]> entry : cells.entrySet()) {
+                    int latCell = (int) (entry.getKey() >> 32);
+                    int lonCell = (int) (long) entry.getKey();
+                    if (latCell >= cellOf(south) && latCell <= cellOf(north) && lonCell >= cellOf(west) && lonCell <= cellOf(east)) {
+                        hits.add(entry.getValue());
+                    }
+                }
+            } else {
+                for (int lat = cellOf(south); lat <= cellOf(north); lat++) {
+                    for (int lon = cellOf(west); lon <= cellOf(east); lon++) {
+                        int[] cell = cells.get(cellKey(lat, lon));
+                        if (cell != null) hits.add(cell);
+                    }
+                }
+            }
+            int total = 0;
+            for (int[] cell : hits) total += cell.length;
+            int[] result = new int[total];
+            int offset = 0;
+            for (int[] cell : hits) {
+                System.arraycopy(cell, 0, result, offset, cell.length);
+                offset += cell.length;
+            }
+            // Keep the export's row order so placemarks come out as they would in a static file
+            Arrays.sort(result);
+            return result;
+        }
+
+        private static int cellOf(double degrees) {
+            return (int) Math.floor(degrees / CELL_DEGREES);
+        }
+
+        private static long cellKey(int latCell, int lonCell) {
+            return ((long) latCell << 32) | (lonCell & 0xffffffffL);
+        }
+    }
+
+    private final List<Map<String, String>> siteRows;
+    private final List<Map<String, String>> sectorRows;
+    private final Map<String, BandSettings> bandSettings;
+    private final Set<String> uniqueBands;
+    private final GridIndex siteIndex;
+    private final GridIndex sectorIndex;
+    private final double maxRangeMeters;
+    private final String settingsFingerprint;
+    private final int maxSectors;
+    private final FanGeometry fanGeometry;
+    private final Map<String, byte[]> tileCache = Collections.synchronizedMap(new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > CACHE_ENTRIES;
+        }
+    });
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * {@code fanGeometry}'s vertex budget applies to each tile separately.
+     */
+    KmlTileServer(SheetData siteData, SheetData sectorsData, Map<String, BandSettings> bandSettings, FanGeometry fanGeometry, int maxSectors) {
+        this.siteRows = siteData.tableData;
+        this.sectorRows = sectorsData.tableData;
+        this.bandSettings = bandSettings;
+        this.fanGeometry = fanGeometry;
+        this.maxSectors = maxSectors;
+        this.uniqueBands = sectorRows.stream().map(row -> row.getOrDefault("Band Name", "Unknown")).collect(Collectors.toCollection(LinkedHashSet::new));
+        this.siteIndex = new GridIndex(siteRows);
+        this.sectorIndex = new GridIndex(sectorRows);
+        int maxRange = 0;
+        StringBuilder fingerprint = new StringBuilder();
+        for (Map.Entry<String, BandSettings> entry : new TreeMap<>(bandSettings).entrySet()) {
+            BandSettings settings = entry.getValue();
+            if (settings.include) maxRange = Math.max(maxRange, settings.size);
+            fingerprint.append(entry.getKey()).append(':').append(settings.include).append(',').append(settings.color.getRGB())
+                       .append(',').append(settings.size).append(',').append(settings.transparency).append(';');
+        }
+        this.maxRangeMeters = maxRange;
+        this.settingsFingerprint = fingerprint.toString();
+    }
+
+    /**
+     * Starts listening on the loopback interface. Passing port 0 picks a free port.
+     */
+    void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+        server.setExecutor(executor);
+        server.createContext("/kml", this::handleKml);
+        server.createContext("/launcher.kml", this::handleLauncher);
+        server.start();
+        System.out.println("Serving " + siteIndex.size + " sites and " + sectorIndex.size + " sectors at " + getBaseUrl() + "/launcher.kml");
+    }
+
+    void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * A KML file containing the NetworkLink that points Google Earth at this server.
+     */
+    String createLauncherKml() {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n" +
+               "<NetworkLink>\n<name>Planet Sectors (live)</name>\n<open>1</open>\n<refreshVisibility>0</refreshVisibility>\n" +
+               "<Link>\n<href>" + getBaseUrl() + "/kml</href>\n" +
+               "<viewRefreshMode>onStop</viewRefreshMode>\n<viewRefreshTime>1</viewRefreshTime>\n" +
+               "<viewFormat>BBOX=[bboxWest],[bboxSouth],[bboxEast],[bboxNorth]</viewFormat>\n" +
+               "</Link>\n</NetworkLink>\n</kml>\n";
+    }
+
+    void writeLauncher(File file) throws IOException {
+        Files.write(file.toPath(), createLauncherKml().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void handleLauncher(HttpExchange exchange) throws IOException {
+        byte[] body = createLauncherKml().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/vnd.google-earth.kml+xml");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void handleKml(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            double[] bbox = parseBbox(query.get("BBOX"));
+            if (bbox == null) {
+                sendError(exchange, 400, "Expected BBOX=west,south,east,north");
+                return;
+            }
+            Set<String> bands = query.containsKey("bands")
+                ? new HashSet<>(Arrays.asList(query.get("bands").split(",")))
+                : null;
+
+            double[] bucket = snapToBucket(bbox);
+            String cacheKey = Arrays.toString(bucket) + "|" + (bands == null ? "*" : new TreeSet<>(bands).toString()) + "|" + settingsFingerprint;
+
+            exchange.getResponseHeaders().set("Content-Type", "application/vnd.google-earth.kml+xml");
+            byte[] cached = tileCache.get(cacheKey);
+            if (cached != null) {
+                exchange.sendResponseHeaders(200, cached.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(cached);
+                }
+                return;
+            }
+
+            // Stream to the client as we render and keep a copy for the cache
+            exchange.sendResponseHeaders(200, 0);
+            ByteArrayOutputStream copy = new ByteArrayOutputStream(64 * 1024);
+            try (OutputStream out = exchange.getResponseBody();
+                 Writer writer = new OutputStreamWriter(new TeeOutputStream(out, copy), StandardCharsets.UTF_8)) {
+                renderTile(writer, bucket, bands);
+            }
+            tileCache.put(cacheKey, copy.toByteArray());
+        } catch (RuntimeException e) {
+            System.err.println("Could not render KML tile: " + e.getMessage());
+            throw e;
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Renders the sites inside the box and every sector whose fan can reach into it. Fans extend up
+     * to the largest band size from the antenna, so the sector lookup widens the box by that much.
+     */
+    void renderTile(Writer writer, double[] bbox, Set<String> bands) throws IOException {
+        double west = bbox[0], south = bbox[1], east = bbox[2], north = bbox[3];
+        double padLat = maxRangeMeters / METERS_PER_DEGREE;
+        double midLat = Math.toRadians((south + north) / 2);
+        double padLon = maxRangeMeters / (METERS_PER_DEGREE * Math.max(0.01, Math.cos(midLat)));
+
+        List<Map<String, String>> visibleSites = new ArrayList<>();
+        for (int index : siteIndex.query(south, west, north, east)) {
+            visibleSites.add(siteRows.get(index));
+        }
+
+        int[] sectorHits = sectorIndex.query(south - padLat, west - padLon, north + padLat, east + padLon);
+        Map<String, List<Map<String, String>>> visibleByBand = new HashMap<>();
+        int rendered = 0;
+        boolean truncated = false;
+        for (int index : sectorHits) {
+            Map<String, String> row = sectorRows.get(index);
+            String band = row.getOrDefault("Band Name", "Unknown");
+            BandSettings settings = bandSettings.get(band);
+            if (settings == null || !settings.include || (bands != null && !bands.contains(band))) continue;
+            if (rendered == maxSectors) {
+                // Only truncated if a sector past the limit would have been drawn
+                truncated = true;
+                break;
+            }
+            visibleByBand.computeIfAbsent(band, k -> new ArrayList<>()).add(row);
+            rendered++;
+        }
+
+        new KmlWriter(bandSettings, fanGeometry).writeDocument(writer, visibleSites, visibleByBand, uniqueBands, count -> { });
+        if (truncated) {
+            System.err.println("Tile " + Arrays.toString(bbox) + " truncated at " + maxSectors + " sectors; zoom in for the rest.");
+        }
+    }
+
+    /**
+     * Expands the view box outward to a grid whose step halves with each zoom level, so small
+     * camera moves at the same zoom land on the same cache entry.
+     */
+    static double[] snapToBucket(double[] bbox) {
+        double span = Math.max(bbox[2] - bbox[0], bbox[3] - bbox[1]);
+        double step = Math.pow(2, Math.floor(Math.log(Math.max(span, 1e-6)) / Math.log(2))) / 2;
+        return new double[]{
+            Math.floor(bbox[0] / step) * step, Math.floor(bbox[1] / step) * step,
+            Math.ceil(bbox[2] / step) * step, Math.ceil(bbox[3] / step) * step
+        };
+    }
+
+    private static double[] pointOf(Map<String, String> row) {
+        try {
+            return new double[]{Double.parseDouble(row.getOrDefault("Latitude", "")), Double.parseDouble(row.getOrDefault("Longitude", ""))};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static double[] parseBbox(String value) {
+        if (value == null) return null;
+        String[] parts = value.split(",");
+        if (parts.length != 4) return null;
+        try {
+            double[] bbox = new double[4];
+            for (int i = 0; i < 4; i++) bbox[i] = Double.parseDouble(parts[i].trim());
+            return bbox;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) return query;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return query;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static class TeeOutputStream extends OutputStream {
+        private final OutputStream first;
+        private final OutputStream second;
+
+        TeeOutputStream(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            first.close();
+        }
+    }
+
+    /**
+     * Usage: {@code --serve <export.xlsx> [--port P] [--launcher file.kml] [--max-sectors N] [--vertex-budget V]}.
+     * Uses the shared controller rules and antenna-pattern files and the default band settings.
+     */
+    static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: --serve <export.xlsx> [--port P] [--launcher file.kml] [--max-sectors N] [--vertex-budget V]");
+            System.exit(2);
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        PlanetExportProcessor processor = new PlanetExportProcessor(ControllerRules.loadDefault());
+        PlanetExportProcessor.Result result = processor.process(new File(args[1]), System.out::println);
+        if (result.siteData == null || result.sectorsData == null) {
+            System.err.println("Export is missing one of the required sheets.");
+            System.exit(1);
+        }
+        Collection<String> bands = result.sectorsData.tableData.stream().map(row -> row.getOrDefault("Band Name", "Unknown")).collect(Collectors.toCollection(LinkedHashSet::new));
+        int maxSectors = Integer.parseInt(options.getOrDefault("--max-sectors", String.valueOf(DEFAULT_MAX_SECTORS)));
+        FanGeometry fanGeometry = FanGeometry.loadDefault().withResolution(FanGeometry.DEFAULT_MAX_ARC_ERROR_METERS,
+            Long.parseLong(options.getOrDefault("--vertex-budget", String.valueOf(DEFAULT_TILE_VERTEX_BUDGET))));
+        KmlTileServer tileServer = new KmlTileServer(result.siteData, result.sectorsData, BandSettings.defaultsFor(bands), fanGeometry, maxSectors);
+        tileServer.start(Integer.parseInt(options.getOrDefault("--port", String.valueOf(DEFAULT_PORT))));
+        File launcher = new File(options.getOrDefault("--launcher", "planet-live.kml"));
+        tileServer.writeLauncher(launcher);
+        System.out.println("Open " + launcher.getAbsolutePath() + " in Google Earth.");
+    }
+}
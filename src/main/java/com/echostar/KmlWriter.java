@@ -0,0 +1,324 @@
+package com.echostar;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Renders the merged Site and Sectors tables as a KML document. Shared by the GUI's
+ * KMLGeneratorTask and the headless modes so every output uses the same style rules.
+ */
+class KmlWriter {
+
+    private final Map<String, BandSettings> bandSettings;
+    private final FanGeometry fanGeometry;
+
+    KmlWriter(Map<String, BandSettings> bandSettings) {
+        this(bandSettings, FanGeometry.defaults());
+    }
+
+    KmlWriter(Map<String, BandSettings> bandSettings, FanGeometry fanGeometry) {
+        this.bandSettings = bandSettings;
+        this.fanGeometry = fanGeometry;
+    }
+
+    static Map<String, List<Map<String, String>>> groupByBand(List<Map<String, String>> sectorRows) {
+        return sectorRows.stream().collect(Collectors.groupingBy(row -> row.getOrDefault("Band Name", "Unknown")));
+    }
+
+    /**
+     * Writes the full document: styles, the SITES folder, one SECTORS sub-folder per included band
+     * (largest fans first) and the Display label folders. {@code progress} receives the running
+     * placemark count. Returns how many fans were drawn with {@link FanGeometry#MAX_ARC_SEGMENTS}
+     * although their arc error needed more, for the caller to report if it wants to.
+     */
+    long writeDocument(Writer writer, List<Map<String, String>> siteRows, Map<String, ? extends Iterable<Map<String, String>>> sectorsByBand,
+                       Collection<String> uniqueBands, IntConsumer progress) throws IOException {
+        return writeDocument(writer, siteRows, sectorsByBand, uniqueBands, Collections.<PciConflictAnalyzer.Conflict>emptyList(), progress);
+    }
+
+    /**
+     * As above, with a PCI Conflicts folder after the SECTORS folder when {@code conflicts} is not empty.
+     */
+    long writeDocument(Writer writer, List<Map<String, String>> siteRows, Map<String, ? extends Iterable<Map<String, String>>> sectorsByBand,
+                       Collection<String> uniqueBands, List<PciConflictAnalyzer.Conflict> conflicts, IntConsumer progress) throws IOException {
+        return writeDocument(writer, siteRows, sectorsByBand, FanGeometry.FanCounts.of(sectorsByBand), uniqueBands, conflicts, progress);
+    }
+
+    /**
+     * As above, with the fans already counted while {@code sectorsByBand} was built, for rows that
+     * are costly to iterate more than once.
+     */
+    long writeDocument(Writer writer, List<Map<String, String>> siteRows, Map<String, ? extends Iterable<Map<String, String>>> sectorsByBand, FanGeometry.FanCounts fanCounts,
+                       Collection<String> uniqueBands, List<PciConflictAnalyzer.Conflict> conflicts, IntConsumer progress) throws IOException {
+        int count = 0;
+        FanGeometry fans = fanGeometry.fittedTo(fanCounts, bandSettings);
+        writeHeader(writer);
+
+        writer.write("<Folder>\n<name>SITES</name>\n");
+        for (Map<String, String> siteRow : siteRows) {
+            writer.write(createSitePlacemark(siteRow));
+            progress.accept(++count);
+        }
+        writer.write("</Folder>\n");
+
+        writer.write("<Folder>\n<name>SECTORS</name>\n");
+        List<String> bandOrder = new ArrayList<>(uniqueBands);
+        bandOrder.sort((band1, band2) -> {
+            BandSettings settings1 = bandSettings.get(band1);
+            BandSettings settings2 = bandSettings.get(band2);
+            return Integer.compare(settings2.size, settings1.size);
+        });
+
+        for (int i = 0; i < bandOrder.size(); i++) {
+            String bandName = bandOrder.get(i);
+            Iterable<Map<String, String>> rowsForBand = sectorsByBand.get(bandName);
+            BandSettings settings = bandSettings.get(bandName);
+            if (settings != null && settings.include && rowsForBand != null) {
+                writer.write("<Folder>\n<name>" + bandName + "</name>\n");
+                for (Map<String, String> row : rowsForBand) {
+                    writer.write(createSectorPlacemark(row, bandName, settings.size, i, fans));
+                    progress.accept(++count);
+                }
+                writer.write("</Folder>\n");
+            }
+        }
+        writer.write("</Folder>\n");
+
+        if (!conflicts.isEmpty()) {
+            writeConflictsFolder(writer, conflicts);
+        }
+
+        writer.write("<Folder>\n<name>Display</name>\n");
+        List<String> displayHeaders = Arrays.asList("Physical Cell ID", "Electrical Tilt", "Azimuth");
+        for (String header : displayHeaders) {
+            writer.write("<Folder>\n<name>" + header + "</name>\n");
+            for (Map.Entry<String, ? extends Iterable<Map<String, String>>> bandEntry : sectorsByBand.entrySet()) {
+                String bandName = bandEntry.getKey();
+                BandSettings settings = bandSettings.get(bandName);
+                boolean createBandFolder = header.equals("Electrical Tilt") || bandName.toUpperCase().contains("N71");
+                if (createBandFolder && settings != null && settings.include) {
+                    writer.write("<Folder>\n<name>" + bandName + "</name>\n");
+                    for (Map<String, String> row : bandEntry.getValue()) {
+                        writer.write(createLabelPlacemark(row, header, settings.size));
+                        progress.accept(++count);
+                    }
+                    writer.write("</Folder>\n");
+                }
+            }
+            writer.write("</Folder>\n");
+        }
+        writer.write("</Folder>\n");
+
+        writeFooter(writer);
+        return fans.clampedFans(fanCounts, bandSettings);
+    }
+
+    /**
+     * One sub-folder per conflict type, each conflict a line between the two fan centres: red for
+     * PCI collisions, orange for mod-3 and yellow for mod-30 clashes.
+     */
+    void writeConflictsFolder(Writer writer, List<PciConflictAnalyzer.Conflict> conflicts) throws IOException {
+        writer.write("<Folder>\n<name>PCI Conflicts</name>\n");
+        for (PciConflictAnalyzer.Type type : PciConflictAnalyzer.Type.values()) {
+            String lineColor = type == PciConflictAnalyzer.Type.PCI_COLLISION ? "ff0000ff" : type == PciConflictAnalyzer.Type.MOD3 ? "ff0080ff" : "ff00ffff";
+            boolean folderOpen = false;
+            for (PciConflictAnalyzer.Conflict conflict : conflicts) {
+                if (conflict.type != type) continue;
+                if (!folderOpen) {
+                    writer.write("<Folder>\n<name>" + type.label + "</name>\n");
+                    folderOpen = true;
+                }
+                writer.write(createConflictPlacemark(conflict, lineColor));
+            }
+            if (folderOpen) writer.write("</Folder>\n");
+        }
+        writer.write("</Folder>\n");
+    }
+
+    String createConflictPlacemark(PciConflictAnalyzer.Conflict conflict, String lineColor) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<Placemark>\n<name>PCI ").append(conflict.a.getOrDefault("Physical Cell ID", "")).append(" / ").append(conflict.b.getOrDefault("Physical Cell ID", ""))
+          .append(": ").append(conflict.a.getOrDefault("Sector ID", "")).append(" - ").append(conflict.b.getOrDefault("Sector ID", "")).append("</name>\n");
+        sb.append("<description>").append(conflict.type.label).append(" on ").append(conflict.band).append(", ").append(Math.round(conflict.distanceMeters)).append(" m apart")
+          .append(conflict.fansOverlap ? ", fans overlap" : "").append("</description>\n");
+        sb.append("<Style><LineStyle><color>").append(lineColor).append("</color><width>4</width></LineStyle></Style>\n");
+        sb.append("<LineString>\n<tessellate>1</tessellate>\n<coordinates>\n");
+        sb.append(conflict.centreA[1]).append(",").append(conflict.centreA[0]).append(",0\n");
+        sb.append(conflict.centreB[1]).append(",").append(conflict.centreB[0]).append(",0\n");
+        sb.append("</coordinates>\n</LineString>\n</Placemark>\n");
+        return sb.toString();
+    }
+
+    void writeHeader(Writer writer) throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n<Document>\n");
+        writer.write(getSiteStyle());
+        writer.write("<Style id=\"label-style\"><IconStyle><scale>0</scale></IconStyle><LabelStyle><color>ffffffff</color><scale>0.8</scale></LabelStyle></Style>\n");
+        for (Map.Entry<String, BandSettings> entry : bandSettings.entrySet()) {
+            if (entry.getValue().include) {
+                writer.write(createKMLStyle(entry.getKey(), entry.getValue().color, entry.getValue().transparency));
+            }
+        }
+    }
+
+    void writeFooter(Writer writer) throws IOException {
+        writer.write("</Document>\n</kml>\n");
+    }
+
+    String getSiteStyle() {
+        // Boost Mobile orange: #f26522. KML color (AABBGGRR): ff2265f2
+        String boostOrange = "ff2265f2";
+        return "<Style id=\"normPointStyle\">\n" +
+               "    <IconStyle>\n" +
+               "        <scale>0.8</scale>\n" +
+               "        <Icon>\n" +
+               "            <href>https://i.ibb.co/5YtdGtG/LOGO-PLOT-TRNS.png</href>\n" +
+               "        </Icon>\n" +
+               "        <hotSpot x=\"0.5\" y=\"0.5\" xunits=\"fraction\" yunits=\"fraction\"/>\n" +
+               "    </IconStyle>\n" +
+               "    <LabelStyle>\n" +
+               "        <color>ffffffff</color>\n" +
+               "        <scale>1.0</scale>\n" +
+               "    </LabelStyle>\n" +
+               "    <LineStyle>\n" +
+               "        <color>" + boostOrange + "</color>\n" +
+               "        <width>10</width>\n" +
+               "    </LineStyle>\n" +
+               "</Style>\n" +
+               "<StyleMap id=\"site-icon\">\n" +
+               "    <Pair>\n" +
+               "        <key>normal</key>\n" +
+               "        <styleUrl>#normPointStyle</styleUrl>\n" +
+               "    </Pair>\n" +
+               "    <Pair>\n" +
+               "        <key>highlight</key>\n" +
+               "        <styleUrl>#normPointStyle</styleUrl>\n" +
+               "    </Pair>\n" +
+               "</StyleMap>\n" +
+               "<Style id=\"site-line\"><LineStyle><color>" + boostOrange + "</color><width>15</width></LineStyle></Style>\n";
+    }
+
+    String createKMLStyle(String id, Color color, int transparencyPercent) {
+        String safeId = id.replaceAll("[^a-zA-Z0-9]", "");
+
+        // Calculate opacity from the transparency percentage.
+        // In KML, alpha FF is opaque, 00 is transparent.
+        // The slider is for transparency (0=opaque, 100=transparent), so we convert it to opacity for KML.
+        int opacityPercent = 100 - transparencyPercent;
+        int alpha = (int) Math.round(opacityPercent * 2.55); // (percent/100) * 255
+        String alphaHex = String.format("%02x", alpha);
+
+        // Full KML color string (AABBGGRR)
+        String kmlColor = String.format("%s%02x%02x%02x", alphaHex, color.getBlue(), color.getGreen(), color.getRed());
+
+        return String.format("<Style id=\"%s\"><LineStyle><color>ff%s</color></LineStyle><PolyStyle><color>%s</color></PolyStyle></Style>\n", safeId, kmlColor.substring(2), kmlColor);
+    }
+
+    String createSitePlacemark(Map<String, String> row) {
+        String siteId = row.getOrDefault("Site ID", "N/A");
+        String lon = row.getOrDefault("Longitude", "0");
+        String lat = row.getOrDefault("Latitude", "0");
+        String heightFt = row.getOrDefault("Height (ft)", "0");
+        double heightMeters = 0;
+        try { heightMeters = Double.parseDouble(heightFt) * 0.3048; } catch (NumberFormatException ignored) {}
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("<Placemark>\n<name>").append(siteId).append(" (").append(heightFt).append(" ft)</name>\n");
+        sb.append("<styleUrl>#site-icon</styleUrl>\n<ExtendedData>\n<SchemaData schemaUrl=\"#SITES_SCHEME_ID\">\n");
+        for (Map.Entry<String, String> entry : row.entrySet()) {
+            sb.append("<SimpleData name=\"").append(entry.getKey().replaceAll("[^a-zA-Z0-9]", "")).append("\">").append(entry.getValue()).append("</SimpleData>\n");
+        }
+        sb.append("</SchemaData>\n</ExtendedData>\n<Point>\n<extrude>1</extrude>\n<altitudeMode>relativeToGround</altitudeMode>\n");
+        sb.append("<coordinates>").append(lon).append(",").append(lat).append(",").append(heightMeters).append("</coordinates>\n");
+        sb.append("</Point>\n</Placemark>\n");
+        return sb.toString();
+    }
+
+    String createSectorPlacemark(Map<String, String> row, String bandName, int range, int bandIndex, FanGeometry fans) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            double lat = Double.parseDouble(row.getOrDefault("Latitude", "0"));
+            double lon = Double.parseDouble(row.getOrDefault("Longitude", "0"));
+            double azimuth = Double.parseDouble(row.getOrDefault("Azimuth", "0"));
+            double height = (Double.parseDouble(row.getOrDefault("Height (ft)", "0")) * 0.3048) + (bandIndex * 0.1); // Add 10cm offset per band
+
+            sb.append("<Placemark>\n<name>").append(row.getOrDefault("Custom: NR_Cell_Name", "N/A")).append("</name>\n");
+            sb.append("<styleUrl>#").append(bandName.replaceAll("[^a-zA-Z0-9]", "")).append("</styleUrl>\n");
+            sb.append("<ExtendedData>\n<SchemaData schemaUrl=\"#SECTORS_SCHEME_ID\">\n");
+            for (Map.Entry<String, String> entry : row.entrySet()) {
+                sb.append("<SimpleData name=\"").append(entry.getKey().replaceAll("[^a-zA-Z0-9]", "")).append("\">").append(entry.getValue()).append("</SimpleData>\n");
+            }
+            sb.append("</SchemaData>\n</ExtendedData>\n");
+            sb.append("<Polygon>\n<altitudeMode>relativeToGround</altitudeMode>\n<outerBoundaryIs>\n<LinearRing>\n<coordinates>\n");
+            sb.append(lon).append(",").append(lat).append(",").append(height).append("\n");
+            double beamwidth = fans.beamwidthOf(row);
+            int segments = fans.arcSegments(range, beamwidth);
+            for (int i = 0; i <= segments; i++) {
+                double angle = azimuth - (beamwidth / 2) + (beamwidth * i / segments);
+                double[] newCoords = getDestinationPoint(lat, lon, angle, range);
+                sb.append(newCoords[1]).append(",").append(newCoords[0]).append(",").append(height).append("\n");
+            }
+            sb.append(lon).append(",").append(lat).append(",").append(height).append("\n");
+            sb.append("</coordinates>\n</LinearRing>\n</outerBoundaryIs>\n</Polygon>\n</Placemark>\n");
+        } catch (NumberFormatException e) {
+            System.err.println("Could not parse number for placemark: " + row.get("Sector ID"));
+        }
+        return sb.toString();
+    }
+
+    String createLabelPlacemark(Map<String, String> row, String header, int range) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            String labelText = row.getOrDefault(header, "");
+            if (!labelText.isEmpty()) {
+                double lat = Double.parseDouble(row.getOrDefault("Latitude", "0"));
+                double lon = Double.parseDouble(row.getOrDefault("Longitude", "0"));
+                double azimuth = Double.parseDouble(row.getOrDefault("Azimuth", "0"));
+                double height = Double.parseDouble(row.getOrDefault("Height (ft)", "0")) * 0.3048;
+                double distance = header.equals("Electrical Tilt") ? range : range / 2.0;
+                double[] labelCoords = getDestinationPoint(lat, lon, azimuth, distance);
+                sb.append("<Placemark>\n<name>").append(labelText).append("</name>\n<styleUrl>#label-style</styleUrl>\n");
+                sb.append("<ExtendedData>\n<SchemaData schemaUrl=\"#SECTORS_SCHEME_ID\">\n");
+                sb.append("<SimpleData name=\"PhysicalCellID\">").append(row.getOrDefault("Physical Cell ID", "")).append("</SimpleData>\n");
+                sb.append("<SimpleData name=\"Heightft\">").append(row.getOrDefault("Height (ft)", "")).append("</SimpleData>\n");
+                sb.append("<SimpleData name=\"ElectricalTilt\">").append(row.getOrDefault("Electrical Tilt", "")).append("</SimpleData>\n");
+                sb.append("</SchemaData>\n</ExtendedData>\n<Point>\n<altitudeMode>relativeToGround</altitudeMode>\n");
+                sb.append("<coordinates>").append(labelCoords[1]).append(",").append(labelCoords[0]).append(",").append(height).append("</coordinates>\n");
+                sb.append("</Point>\n</Placemark>\n");
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Could not parse number for label placemark: " + row.get("Sector ID"));
+        }
+        return sb.toString();
+    }
+
+    static double[] getDestinationPoint(double lat, double lon, double bearing, double distance) {
+        double R = 6371e3;
+        double latRad = Math.toRadians(lat);
+        double lonRad = Math.toRadians(lon);
+        double bearingRad = Math.toRadians(bearing);
+        double lat2Rad = Math.asin(Math.sin(latRad) * Math.cos(distance / R) + Math.cos(latRad) * Math.sin(distance / R) * Math.cos(bearingRad));
+        double lon2Rad = lonRad + Math.atan2(Math.sin(bearingRad) * Math.sin(distance / R) * Math.cos(latRad), Math.cos(distance / R) - Math.sin(latRad) * Math.sin(lat2Rad));
+        return new double[]{Math.toDegrees(lat2Rad), Math.toDegrees(lon2Rad)};
+    }
+
+    /**
+     * Great-circle (haversine) distance in metres, on the same sphere as {@link #getDestinationPoint}.
+     */
+    static double getDistance(double lat1, double lon1, double lat2, double lon2) {
+        double R = 6371e3;
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * R * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,321 @@
+package com.echostar;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Memory-bounded variant of {@link PlanetExportProcessor} for exports too large to hold in the heap.
+ *
+ * Sheets are streamed from the SAX parser straight into {@link SpillSorter}s, so no raw sheet is ever
+ * materialised. The three lookups of processSectorsData become sort-merge joins (PCI by Site/Sector ID,
+ * antenna fields by Site/Antenna ID, tilt by Site+Antenna+Band Info), each re-sorting the sectors and
+ * spilling to disk whenever the shared heap budget is exceeded. The joined sectors are finally put
+ * back in sheet order and split into one file per band, which KmlWriter reads as it writes, so the
+ * KML comes out byte-for-byte the same as the in-memory path.
+ */
+class OutOfCorePipeline implements Closeable {
+
+    // Positions in the working sector record; 0-13 line up with SECTOR_HEADERS
+    private static final int SITE_ID = 0;
+    private static final int BAND_NAME = 1;
+    private static final int SECTOR_ID = 5;
+    private static final int PCI = 6;
+    private static final int ANTENNA_ID = 7;
+    private static final int LATITUDE = 8;
+    private static final int ANTENNA_FILE = 10;
+    private static final int TILT = 13;
+    private static final int BAND_INFO = 14;
+    private static final int OUTPUT_FIELDS = 14;
+
+    /**
+     * The merged Site table (small, kept in memory) and the Sectors table as one spilled file per band.
+     */
+    static class Result {
+        final SheetData siteData;
+        /** Null if a sheet needed for sectors is missing. Same iteration order as KmlWriter.groupByBand. */
+        final Map<String, SpilledRows> sectorsByBand;
+        /** Counted while the band files were written, so the KML stage needn't read them for it. */
+        final FanGeometry.FanCounts fanCounts;
+        final Set<String> uniqueBands;
+        final long sectorCount;
+
+        Result(SheetData siteData, Map<String, SpilledRows> sectorsByBand, FanGeometry.FanCounts fanCounts, Set<String> uniqueBands, long sectorCount) {
+            this.siteData = siteData;
+            this.sectorsByBand = sectorsByBand;
+            this.fanCounts = fanCounts;
+            this.uniqueBands = uniqueBands;
+            this.sectorCount = sectorCount;
+        }
+    }
+
+    /**
+     * Final sector rows for one band, read back from disk each time it is iterated.
+     */
+    static class SpilledRows implements Iterable<Map<String, String>> {
+        private final File file;
+
+        SpilledRows(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public Iterator<Map<String, String>> iterator() {
+            try {
+                final SpillSorter.RunReader reader = new SpillSorter.RunReader(file);
+                return new Iterator<Map<String, String>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return reader.hasNext();
+                    }
+
+                    @Override
+                    public Map<String, String> next() {
+                        SpillSorter.Record record = reader.next();
+                        Map<String, String> row = new LinkedHashMap<>();
+                        for (int i = 0; i < OUTPUT_FIELDS; i++) {
+                            row.put(PlanetExportProcessor.SECTOR_HEADERS.get(i), record.values[i]);
+                        }
+                        return row;
+                    }
+                };
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private interface JoinStep {
+        /** {@code match} is the last right-side record with the same key, or null. */
+        void accept(SpillSorter.Record left, SpillSorter.Record match) throws IOException;
+    }
+
+    private final PlanetExportProcessor processor;
+    private final SpillSorter.Budget budget;
+    private final File workDir;
+
+    OutOfCorePipeline(ControllerRules controllerRules, long memoryBudgetBytes, File tempDir) throws IOException {
+        this.processor = new PlanetExportProcessor(controllerRules);
+        this.budget = new SpillSorter.Budget(memoryBudgetBytes);
+        this.workDir = Files.createTempDirectory(tempDir.toPath(), "planetkml-spill").toFile();
+    }
+
+    /**
+     * Runs the same steps as {@link PlanetExportProcessor#process} and reports the same progress messages.
+     * The returned band files live until this pipeline is closed.
+     */
+    Result process(File excelFile, Consumer<String> progress) throws Exception {
+        try (SpillSorter antennas = new SpillSorter(workDir, "antennas", budget);
+             SpillSorter electrical = new SpillSorter(workDir, "electrical", budget);
+             SpillSorter sectorsByPciKey = new SpillSorter(workDir, "sectors-pci", budget);
+             SpillSorter carriers = new SpillSorter(workDir, "carriers", budget)) {
+
+            // Antennas: spilled by Site/Antenna ID for the sector join; the first height per site is kept for the Sites table
+            progress.accept("Processing sheet: Antennas...");
+            Map<String, String> heightLookup = new HashMap<>();
+            long[] seq = {0};
+            List<String> antennaHeaders = PlanetExportProcessor.streamSheet(excelFile, "Antennas", row -> {
+                String siteId = row.getOrDefault("Site ID", "");
+                if (!siteId.isEmpty() && !heightLookup.containsKey(siteId)) {
+                    heightLookup.put(siteId, row.getOrDefault("Height (ft)", ""));
+                }
+                add(antennas, siteId + "||" + row.getOrDefault("Antenna ID", ""), seq[0]++, new String[]{
+                    row.getOrDefault("Latitude", ""), row.getOrDefault("Longitude", ""),
+                    row.getOrDefault("Antenna File", "").replace(".pafx", ""),
+                    row.getOrDefault("Height (ft)", ""), row.getOrDefault("Azimuth", "")
+                });
+            });
+            antennas.seal();
+
+            progress.accept("Processing sheet: Antenna_Electrical_Parameters...");
+            seq[0] = 0;
+            List<String> electricalHeaders = PlanetExportProcessor.streamSheet(excelFile, "Antenna_Electrical_Parameters", row -> {
+                String key = row.getOrDefault("Site ID", "") + row.getOrDefault("Antenna ID", "") + processor.bandInfoFor(row);
+                if (!key.isEmpty()) {
+                    add(electrical, key, seq[0]++, new String[]{row.getOrDefault("Electrical Tilt", "")});
+                }
+            });
+            electrical.seal();
+
+            progress.accept("Processing sheet: Sectors...");
+            seq[0] = 0;
+            List<String> sectorHeaders = PlanetExportProcessor.streamSheet(excelFile, "Sectors", row -> {
+                String siteId = row.getOrDefault("Site ID", "");
+                String sectorId = row.getOrDefault("Sector ID", "");
+                if (sectorId.isEmpty() || siteId.isEmpty()) return;
+                String[] values = new String[BAND_INFO + 1];
+                values[SITE_ID] = siteId;
+                values[BAND_NAME] = row.getOrDefault("Band Name", "");
+                values[2] = row.getOrDefault("Custom: NR_Cell_Global_Id", "");
+                values[3] = row.getOrDefault("Custom: NR_Cell_Name", "");
+                values[4] = row.getOrDefault("Custom: RU_Model", "");
+                values[SECTOR_ID] = sectorId;
+                values[ANTENNA_ID] = PlanetExportProcessor.antennaIdOf(sectorId);
+                values[BAND_INFO] = PlanetExportProcessor.bandInfoOfSector(values[BAND_NAME]);
+                add(sectorsByPciKey, siteId + "||" + sectorId, seq[0]++, values);
+            });
+            sectorsByPciKey.seal();
+
+            progress.accept("Processing sheet: NR_Sector_Carriers...");
+            seq[0] = 0;
+            List<String> carrierHeaders = PlanetExportProcessor.streamSheet(excelFile, "NR_Sector_Carriers", row ->
+                add(carriers, row.getOrDefault("Site ID", "") + "||" + row.getOrDefault("Sector ID", ""), seq[0]++,
+                    new String[]{row.get("Physical Cell ID")}));
+            carriers.seal();
+
+            progress.accept("Processing sheet: Sites...");
+            List<Map<String, String>> siteRows = new ArrayList<>();
+            List<String> siteHeaders = PlanetExportProcessor.streamSheet(excelFile, "Sites", siteRows::add);
+
+            progress.accept("Processing Electrical Parameters...");
+            // Band Info was resolved while streaming; nothing else to do for this step
+
+            progress.accept("Processing Site Data...");
+            SheetData finalSiteData = null;
+            if (siteHeaders != null) {
+                List<Map<String, String>> processedSites = new ArrayList<>();
+                for (Map<String, String> row : siteRows) {
+                    Map<String, String> newRow = new LinkedHashMap<>();
+                    String siteId = row.getOrDefault("Site ID", "");
+                    for (String header : PlanetExportProcessor.SITE_HEADERS) {
+                        newRow.put(header, header.equals("Height (ft)") ? heightLookup.getOrDefault(siteId, "") : row.getOrDefault(header, ""));
+                    }
+                    processedSites.add(newRow);
+                }
+                finalSiteData = new SheetData(PlanetExportProcessor.SITE_HEADERS, processedSites);
+            }
+            siteRows.clear();
+
+            progress.accept("Processing Sectors Data...");
+            if (sectorHeaders == null || carrierHeaders == null || antennaHeaders == null || electricalHeaders == null) {
+                return new Result(finalSiteData, null, new FanGeometry.FanCounts(), new LinkedHashSet<>(), 0);
+            }
+
+            try (SpillSorter sectorsByAntennaKey = new SpillSorter(workDir, "sectors-antenna", budget);
+                 SpillSorter sectorsByTiltKey = new SpillSorter(workDir, "sectors-tilt", budget);
+                 SpillSorter sectorsInOrder = new SpillSorter(workDir, "sectors-ordered", budget)) {
+
+                mergeJoin(sectorsByPciKey, carriers, (sector, carrier) -> {
+                    String[] values = sector.values;
+                    values[PCI] = carrier != null ? carrier.values[0] : "";
+                    sectorsByAntennaKey.add(values[SITE_ID] + "||" + values[ANTENNA_ID], sector.seq, values);
+                });
+                sectorsByAntennaKey.seal();
+
+                mergeJoin(sectorsByAntennaKey, antennas, (sector, antenna) -> {
+                    String[] values = sector.values;
+                    for (int i = 0; i < 5; i++) {
+                        values[LATITUDE + i] = antenna != null ? antenna.values[i] : "";
+                    }
+                    sectorsByTiltKey.add(values[SITE_ID] + values[ANTENNA_ID] + values[BAND_INFO], sector.seq, values);
+                });
+                sectorsByTiltKey.seal();
+
+                mergeJoin(sectorsByTiltKey, electrical, (sector, params) -> {
+                    String[] values = sector.values;
+                    values[TILT] = params != null ? params.values[0] : "";
+                    // Equal keys come back in seq order, which restores the Sectors sheet order
+                    sectorsInOrder.add("", sector.seq, values);
+                });
+                sectorsInOrder.seal();
+
+                return partitionByBand(finalSiteData, sectorsInOrder);
+            }
+        }
+    }
+
+    /**
+     * Writes the ordered sectors into one file per band, counting the fans as they go. Bands are added to a HashMap in first-seen
+     * order with computeIfAbsent, exactly as Collectors.groupingBy does, so the Display folders
+     * iterate in the same order. (computeIfAbsent links a new key at the head of its hash bin where
+     * put appends it, which matters when band names collide, e.g. "N71" and "n71".)
+     */
+    private Result partitionByBand(SheetData finalSiteData, SpillSorter sectorsInOrder) throws IOException {
+        Map<String, SpilledRows> sectorsByBand = new HashMap<>();
+        Map<String, DataOutputStream> writers = new HashMap<>();
+        FanGeometry.FanCounts fanCounts = new FanGeometry.FanCounts();
+        Set<String> uniqueBands = new LinkedHashSet<>();
+        long count = 0;
+        try (SpillSorter.CloseableIterator<SpillSorter.Record> sectors = sectorsInOrder.sortedIterator()) {
+            while (sectors.hasNext()) {
+                SpillSorter.Record sector = sectors.next();
+                String band = sector.values[BAND_NAME];
+                DataOutputStream out = writers.get(band);
+                if (out == null) {
+                    File bandFile = File.createTempFile("band", ".bin", workDir);
+                    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(bandFile), 1 << 16));
+                    writers.put(band, out);
+                    SpilledRows rows = new SpilledRows(bandFile);
+                    sectorsByBand.computeIfAbsent(band, key -> rows);
+                    uniqueBands.add(band);
+                }
+                SpillSorter.writeRecord(out, new SpillSorter.Record("", sector.seq, Arrays.copyOf(sector.values, OUTPUT_FIELDS)));
+                fanCounts.add(band, sector.values[ANTENNA_FILE]);
+                count++;
+            }
+        } finally {
+            for (DataOutputStream out : writers.values()) {
+                SpillSorter.writeEnd(out);
+                out.close();
+            }
+        }
+        return new Result(finalSiteData, sectorsByBand, fanCounts, uniqueBands, count);
+    }
+
+    /**
+     * Walks two sorters in key order. For every left record, {@code step} gets the last right record
+     * with the same key, matching the "last put wins" HashMap lookups of the in-memory path.
+     */
+    private static void mergeJoin(SpillSorter left, SpillSorter right, JoinStep step) throws IOException {
+        try (SpillSorter.CloseableIterator<SpillSorter.Record> leftRecords = left.sortedIterator();
+             SpillSorter.CloseableIterator<SpillSorter.Record> rightRecords = right.sortedIterator()) {
+            SpillSorter.Record nextRight = rightRecords.hasNext() ? rightRecords.next() : null;
+            SpillSorter.Record match = null;
+            while (leftRecords.hasNext()) {
+                SpillSorter.Record record = leftRecords.next();
+                if (match != null && !match.key.equals(record.key)) match = null;
+                while (nextRight != null && nextRight.key.compareTo(record.key) <= 0) {
+                    if (nextRight.key.equals(record.key)) match = nextRight;
+                    nextRight = rightRecords.hasNext() ? rightRecords.next() : null;
+                }
+                step.accept(record, match);
+            }
+        }
+        left.close();
+        right.close();
+    }
+
+    private static void add(SpillSorter sorter, String key, long seq, String[] values) {
+        try {
+            sorter.add(key, seq, values);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        File[] files = workDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) file.deleteOnExit();
+            }
+        }
+        if (!workDir.delete()) workDir.deleteOnExit();
+    }
+}
@@ -0,0 +1,365 @@
+package com.echostar;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Finds PCI collisions and mod-3 / mod-30 clashes between nearby sectors of the same band.
+ *
+ * Two sectors are neighbours when they are within {@code maxDistanceMeters} of each other or when
+ * their fans (band range, beamwidth of the antenna, see {@link AntennaPatterns}) overlap. Each band's sectors go into a grid whose
+ * cells are at least as wide as the furthest a neighbour can be, so each sector only checks the 3x3
+ * cells around it instead of every other sector. Distances are great-circle, so a nationwide
+ * export is measured the same at 25 and at 49 degrees north. The sectors are split into chunks scanned in parallel;
+ * results come back in export row order whatever the thread count.
+ */
+class PciConflictAnalyzer {
+
+    static final double DEFAULT_MAX_DISTANCE_METERS = 1000;
+
+    private static final double METERS_PER_DEGREE = 111_320.0;
+
+    private static final int CHUNK_SIZE = 4096;
+
+    static final List<String> CONFLICT_HEADERS = Collections.unmodifiableList(Arrays.asList(
+        "Band Name", "Conflict", "Sector ID A", "Site ID A", "PCI A", "Sector ID B", "Site ID B", "PCI B", "Distance (m)", "Fans Overlap"));
+
+    /**
+     * A pair is reported once, under the most specific type that applies: equal PCIs, else equal mod
+     * 30 (which is always equal mod 3 too), else equal mod 3.
+     */
+    enum Type {
+        PCI_COLLISION("PCI collision"), MOD3("Mod-3 clash"), MOD30("Mod-30 clash");
+
+        final String label;
+
+        Type(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * One clashing pair. {@code a} is the sector that comes first in the export.
+     */
+    static class Conflict {
+        final String band;
+        final Type type;
+        final Map<String, String> a;
+        final Map<String, String> b;
+        final double distanceMeters;
+        final boolean fansOverlap;
+        /** Fan centres (lat, lon) of a and b, for drawing the conflict. */
+        final double[] centreA;
+        final double[] centreB;
+
+        Conflict(String band, Type type, Map<String, String> a, Map<String, String> b, double distanceMeters, boolean fansOverlap, double[] centreA, double[] centreB) {
+            this.band = band;
+            this.type = type;
+            this.a = a;
+            this.b = b;
+            this.distanceMeters = distanceMeters;
+            this.fansOverlap = fansOverlap;
+            this.centreA = centreA;
+            this.centreB = centreB;
+        }
+    }
+
+    private final double maxDistanceMeters;
+    private final boolean checkMod3;
+    private final boolean checkMod30;
+    /** Same beamwidths the sector fans are drawn with. */
+    private final AntennaPatterns antennaPatterns;
+
+    PciConflictAnalyzer(double maxDistanceMeters, boolean checkMod3, boolean checkMod30, AntennaPatterns antennaPatterns) {
+        this.maxDistanceMeters = maxDistanceMeters;
+        this.checkMod3 = checkMod3;
+        this.checkMod30 = checkMod30;
+        this.antennaPatterns = antennaPatterns;
+    }
+
+    /**
+     * Analyses each band in {@code bandRanges} (band name to fan range in metres) separately;
+     * sectors of other bands are ignored.
+     */
+    List<Conflict> analyze(List<Map<String, String>> sectorRows, Map<String, Integer> bandRanges) {
+        Map<String, List<Map<String, String>>> byBand = new LinkedHashMap<>();
+        for (Map<String, String> row : sectorRows) {
+            String band = row.getOrDefault("Band Name", "Unknown");
+            if (bandRanges.containsKey(band)) byBand.computeIfAbsent(band, k -> new ArrayList<>()).add(row);
+        }
+        List<Conflict> conflicts = new ArrayList<>();
+        for (Map.Entry<String, List<Map<String, String>>> band : byBand.entrySet()) {
+            conflicts.addAll(new BandScan(band.getKey(), band.getValue(), bandRanges.get(band.getKey())).run());
+        }
+        return conflicts;
+    }
+
+    /**
+     * The conflicts as a table for the GUI tab and the CSV export.
+     */
+    static SheetData toSheetData(Collection<Conflict> conflicts) {
+        List<Map<String, String>> rows = new ArrayList<>(conflicts.size());
+        for (Conflict conflict : conflicts) {
+            Map<String, String> row = new LinkedHashMap<>();
+            row.put("Band Name", conflict.band);
+            row.put("Conflict", conflict.type.label);
+            row.put("Sector ID A", conflict.a.getOrDefault("Sector ID", ""));
+            row.put("Site ID A", conflict.a.getOrDefault("Site ID", ""));
+            row.put("PCI A", conflict.a.getOrDefault("Physical Cell ID", ""));
+            row.put("Sector ID B", conflict.b.getOrDefault("Sector ID", ""));
+            row.put("Site ID B", conflict.b.getOrDefault("Site ID", ""));
+            row.put("PCI B", conflict.b.getOrDefault("Physical Cell ID", ""));
+            row.put("Distance (m)", String.valueOf(Math.round(conflict.distanceMeters)));
+            row.put("Fans Overlap", conflict.fansOverlap ? "Yes" : "No");
+            rows.add(row);
+        }
+        return new SheetData(new ArrayList<>(CONFLICT_HEADERS), rows);
+    }
+
+    /**
+     * Band ranges from the band settings, for the bands that are included.
+     */
+    static Map<String, Integer> rangesOf(Map<String, BandSettings> bandSettings) {
+        Map<String, Integer> ranges = new HashMap<>();
+        for (Map.Entry<String, BandSettings> entry : bandSettings.entrySet()) {
+            if (entry.getValue().include) ranges.put(entry.getKey(), entry.getValue().size);
+        }
+        return ranges;
+    }
+
+    /**
+     * One band's sectors in a grid of latitude rows, each split into longitude cells sized for that
+     * row, so a cell is at least {@code cellMeters} wide at any latitude. A candidate pair is measured
+     * with the haversine distance, and its fans are compared on a plane local to the pair.
+     */
+    private class BandScan {
+        final String band;
+        final List<Map<String, String>> rows = new ArrayList<>();
+        final double range;
+        final double cellMeters;
+        final double cellLatDegrees;
+        double[] lat;
+        double[] lon;
+        double[] azimuth;
+        double[] beamwidth;
+        int[] pci;
+        /** Fan centre (lat, lon) of each sector, shared by all of its conflicts. */
+        double[][] centres;
+        Map<Long, int[]> cells;
+
+        BandScan(String band, List<Map<String, String>> bandRows, int range) {
+            this.band = band;
+            this.range = range;
+            // Fans of range r overlap only within 2r; anything further is out of reach either way
+            this.cellMeters = Math.max(maxDistanceMeters, 2.0 * range);
+            this.cellLatDegrees = cellMeters / METERS_PER_DEGREE;
+            List<double[]> points = new ArrayList<>();
+            for (Map<String, String> row : bandRows) {
+                double[] point = parse(row);
+                if (point != null) {
+                    rows.add(row);
+                    points.add(point);
+                }
+            }
+            int n = points.size();
+            lat = new double[n];
+            lon = new double[n];
+            azimuth = new double[n];
+            beamwidth = new double[n];
+            pci = new int[n];
+            centres = new double[n][];
+            for (int i = 0; i < n; i++) {
+                double[] point = points.get(i);
+                lat[i] = point[0];
+                lon[i] = point[1];
+                azimuth[i] = point[2];
+                beamwidth[i] = antennaPatterns.beamwidthFor(rows.get(i).get("Antenna File"));
+                pci[i] = (int) point[3];
+                // The middle of the fan, or the site itself if the azimuth is unknown
+                centres[i] = Double.isNaN(point[2]) ? new double[]{point[0], point[1]} : KmlWriter.getDestinationPoint(point[0], point[1], point[2], range / 2.0);
+            }
+            Map<Long, List<Integer>> building = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                int latCell = latCellOf(lat[i]);
+                building.computeIfAbsent(cellKey(latCell, lonCellOf(latCell, lon[i])), k -> new ArrayList<>()).add(i);
+            }
+            cells = new HashMap<>(building.size() * 2);
+            for (Map.Entry<Long, List<Integer>> entry : building.entrySet()) {
+                cells.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+            }
+        }
+
+        List<Conflict> run() {
+            int chunks = (rows.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            return IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> scan(chunk * CHUNK_SIZE, Math.min(rows.size(), (chunk + 1) * CHUNK_SIZE)))
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+        }
+
+        /** Pairs (i, j) with i in [from, to) and j > i, so each pair is seen once. */
+        private List<Conflict> scan(int from, int to) {
+            List<Conflict> found = new ArrayList<>();
+            int[] candidates = new int[64];
+            for (int i = from; i < to; i++) {
+                int count = 0;
+                int latCell = latCellOf(lat[i]);
+                for (int dLat = -1; dLat <= 1; dLat++) {
+                    // Longitude cells are sized per row, so look i up in each row's own cells
+                    int lonCell = lonCellOf(latCell + dLat, lon[i]);
+                    for (int dLon = -1; dLon <= 1; dLon++) {
+                        int[] cell = cells.get(cellKey(latCell + dLat, lonCell + dLon));
+                        if (cell == null) continue;
+                        for (int j : cell) {
+                            if (j <= i) continue;
+                            Type type = clash(pci[i], pci[j]);
+                            if (type == null) continue;
+                            if (count == candidates.length) candidates = Arrays.copyOf(candidates, count * 2);
+                            candidates[count++] = j;
+                        }
+                    }
+                }
+                // Report in row order, independent of how the grid cells were visited
+                Arrays.sort(candidates, 0, count);
+                for (int c = 0; c < count; c++) {
+                    int j = candidates[c];
+                    // j relative to i on a plane scaled at the pair's own latitude
+                    double dx = (lon[j] - lon[i]) * METERS_PER_DEGREE * Math.cos(Math.toRadians((lat[i] + lat[j]) / 2));
+                    double dy = (lat[j] - lat[i]) * METERS_PER_DEGREE;
+                    double distance = KmlWriter.getDistance(lat[i], lon[i], lat[j], lon[j]);
+                    boolean overlap = distance <= 2 * range && fansOverlap(i, j, dx, dy);
+                    if (distance <= maxDistanceMeters || overlap) {
+                        found.add(new Conflict(band, clash(pci[i], pci[j]), rows.get(i), rows.get(j), distance, overlap, centres[i], centres[j]));
+                    }
+                }
+            }
+            return found;
+        }
+
+        /**
+         * Whether either fan contains a sample of the other's outline (apex, arc ends, arc middle
+         * points and the fan centre). Exact enough for fans of equal range.
+         */
+        private boolean fansOverlap(int i, int j, double dx, double dy) {
+            if (Double.isNaN(azimuth[i]) || Double.isNaN(azimuth[j])) return false;
+            return samplesInside(j, dx, dy, i, 0, 0) || samplesInside(i, 0, 0, j, dx, dy);
+        }
+
+        /** Fans are given by their apex (x, y) in metres on the pair's plane. */
+        private boolean samplesInside(int sampled, double sx, double sy, int fan, double fx, double fy) {
+            double half = beamwidth[sampled] / 2;
+            double[] offsets = { -half, -half / 2, 0, half / 2, half };
+            if (inFan(fan, fx, fy, sx, sy)) return true;
+            double centre = Math.toRadians(azimuth[sampled]);
+            if (inFan(fan, fx, fy, sx + Math.sin(centre) * range / 2, sy + Math.cos(centre) * range / 2)) return true;
+            for (double offset : offsets) {
+                double bearing = Math.toRadians(azimuth[sampled] + offset);
+                if (inFan(fan, fx, fy, sx + Math.sin(bearing) * range, sy + Math.cos(bearing) * range)) return true;
+            }
+            return false;
+        }
+
+        private boolean inFan(int fan, double fx, double fy, double px, double py) {
+            double dx = px - fx;
+            double dy = py - fy;
+            double distance = Math.hypot(dx, dy);
+            if (distance > range) return false;
+            if (distance < 1e-6) return true;
+            double bearing = Math.toDegrees(Math.atan2(dx, dy));
+            double difference = Math.abs(((bearing - azimuth[fan]) % 360 + 540) % 360 - 180);
+            return difference <= beamwidth[fan] / 2;
+        }
+
+        private int latCellOf(double latitude) {
+            return (int) Math.floor(latitude / cellLatDegrees);
+        }
+
+        /**
+         * Longitude cell in latitude row {@code latCell}. The row's cells are sized for the latitude
+         * one row further from the equator than its poleward edge, so they are at least
+         * {@code cellMeters} wide for any point in that row or the rows next to it.
+         */
+        private int lonCellOf(int latCell, double longitude) {
+            double poleward = Math.max(Math.abs(latCell * cellLatDegrees), Math.abs((latCell + 1) * cellLatDegrees)) + cellLatDegrees;
+            double cellLonDegrees = cellLatDegrees / Math.max(0.01, Math.cos(Math.toRadians(Math.min(90, poleward))));
+            return (int) Math.floor(longitude / cellLonDegrees);
+        }
+    }
+
+    private Type clash(int pciA, int pciB) {
+        if (pciA == pciB) return Type.PCI_COLLISION;
+        // Mod 30 first: any mod-30 clash is also a mod-3 clash and would never be labelled otherwise
+        if (checkMod30 && pciA % 30 == pciB % 30) return Type.MOD30;
+        if (checkMod3 && pciA % 3 == pciB % 3) return Type.MOD3;
+        return null;
+    }
+
+    /**
+     * {lat, lon, azimuth (NaN if unknown), pci}, or null if the sector has no usable position or PCI.
+     */
+    private static double[] parse(Map<String, String> row) {
+        try {
+            double lat = Double.parseDouble(row.getOrDefault("Latitude", ""));
+            double lon = Double.parseDouble(row.getOrDefault("Longitude", ""));
+            double pci = Double.parseDouble(row.getOrDefault("Physical Cell ID", ""));
+            double azimuth;
+            try {
+                azimuth = Double.parseDouble(row.getOrDefault("Azimuth", ""));
+            } catch (NumberFormatException e) {
+                azimuth = Double.NaN;
+            }
+            return new double[]{lat, lon, azimuth, pci};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long cellKey(int latCell, int lonCell) {
+        return ((long) latCell << 32) | (lonCell & 0xffffffffL);
+    }
+
+    /**
+     * Usage: {@code --pci-conflicts <export.xlsx> [--out conflicts.csv] [--max-distance-m D] [--mod3 true|false] [--mod30 true|false]}.
+     * Uses the shared controller rules and antenna-pattern table and the default band ranges.
+     */
+    static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: --pci-conflicts <export.xlsx> [--out conflicts.csv] [--max-distance-m D] [--mod3 true|false] [--mod30 true|false]");
+            System.exit(2);
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        PlanetExportProcessor.Result result = new PlanetExportProcessor(ControllerRules.loadDefault()).process(new File(args[1]), message -> { });
+        if (result.sectorsData == null) {
+            System.err.println("Export is missing one of the required sheets.");
+            System.exit(1);
+        }
+        Set<String> bands = result.sectorsData.tableData.stream().map(row -> row.getOrDefault("Band Name", "Unknown")).collect(Collectors.toCollection(LinkedHashSet::new));
+        PciConflictAnalyzer analyzer = new PciConflictAnalyzer(Double.parseDouble(options.getOrDefault("--max-distance-m", String.valueOf(DEFAULT_MAX_DISTANCE_METERS))),
+            Boolean.parseBoolean(options.getOrDefault("--mod3", "true")), Boolean.parseBoolean(options.getOrDefault("--mod30", "false")), AntennaPatterns.loadDefault());
+        long start = System.currentTimeMillis();
+        List<Conflict> conflicts = analyzer.analyze(result.sectorsData.tableData, rangesOf(BandSettings.defaultsFor(bands)));
+        long elapsed = System.currentTimeMillis() - start;
+        Map<Type, Long> byType = conflicts.stream().collect(Collectors.groupingBy(conflict -> conflict.type, () -> new EnumMap<>(Type.class), Collectors.counting()));
+        System.out.println("Analyzed " + result.sectorsData.tableData.size() + " sectors in " + elapsed + " ms: " + byType);
+        String out = options.get("--out");
+        if (out != null) {
+            TableExporter.writeCsv(toSheetData(conflicts), new File(out));
+            System.out.println("Wrote " + out);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.echostar;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the Planet export sheets with a SAX parser, or from CSV (see {@link CsvExportReader}), and
+ * merges them into the final Site and Sectors tables. Has no Swing dependencies so it can be driven by the GUI or by a headless mode.
+ */
+class PlanetExportProcessor {
+
+    static final String[] SHEETS_TO_READ = { "Antennas", "Antenna_Electrical_Parameters", "Sectors", "NR_Sector_Carriers", "Sites" };
+
+    static final List<String> SITE_HEADERS = Collections.unmodifiableList(Arrays.asList("Site ID", "Longitude", "Latitude", "Site Name", "Custom: Cluster_ID", "Custom: gNodeB_Id", "Custom: gNodeB_Site_Number", "Custom: TAC", "Height (ft)"));
+
+    static final List<String> SECTOR_HEADERS = Collections.unmodifiableList(Arrays.asList("Site ID", "Band Name", "Custom: NR_Cell_Global_ID", "Custom: NR_Cell_Name", "Custom: RU_Model", "Sector ID", "Physical Cell ID", "Antenna ID", "Latitude", "Longitude", "Antenna File", "Height (ft)", "Azimuth", "Electrical Tilt"));
+
+    /**
+     * The merged tables produced from one export.
+     */
+    static class Result {
+        final SheetData siteData;
+        final SheetData sectorsData;
+
+        Result(SheetData siteData, SheetData sectorsData) {
+            this.siteData = siteData;
+            this.sectorsData = sectorsData;
+        }
+    }
+
+    private final ControllerRules controllerRules;
+
+    PlanetExportProcessor(ControllerRules controllerRules) {
+        this.controllerRules = controllerRules;
+    }
+
+    /**
+     * Reads all required sheets from the export and merges them. Each step reports a message
+     * to {@code progress}; there are {@link #SHEETS_TO_READ}.length + 3 steps.
+     */
+    Result process(File excelFile, Consumer<String> progress) throws Exception {
+        Map<String, SheetData> allSheetsData = new HashMap<>();
+
+        for (String sheetName : SHEETS_TO_READ) {
+            progress.accept("Processing sheet: " + sheetName + "...");
+            SheetData sheetData = readSheet(excelFile, sheetName);
+            if (sheetData != null) {
+                allSheetsData.put(sheetName, sheetData);
+            }
+        }
+
+        // Raw sheets are dropped from the map as soon as their last consumer has run so they can be
+        // collected while the next merge is still building its output
+        progress.accept("Processing Electrical Parameters...");
+        SheetData processedElectricalParams = processElectricalParametersData(allSheetsData.remove("Antenna_Electrical_Parameters"));
+
+        progress.accept("Processing Site Data...");
+        SheetData finalSiteData = processSiteData(allSheetsData.remove("Sites"), allSheetsData.get("Antennas"));
+
+        progress.accept("Processing Sectors Data...");
+        SheetData finalSectorsData = processSectorsData(
+            allSheetsData.remove("Sectors"), allSheetsData.remove("NR_Sector_Carriers"),
+            allSheetsData.remove("Antennas"), processedElectricalParams
+        );
+
+        return new Result(finalSiteData, finalSectorsData);
+    }
+
+    SheetData processSiteData(SheetData siteData, SheetData antennasData) {
+        if (siteData == null) return null;
+        Map<String, String> heightLookup = new HashMap<>();
+        if (antennasData != null) {
+            for (Map<String, String> antennaRow : antennasData.tableData) {
+                String siteId = antennaRow.getOrDefault("Site ID", "");
+                if (!siteId.isEmpty() && !heightLookup.containsKey(siteId)) {
+                    heightLookup.put(siteId, antennaRow.getOrDefault("Height (ft)", ""));
+                }
+            }
+        }
+        List<String> finalHeaders = SITE_HEADERS;
+        List<Map<String, String>> processedData = new ArrayList<>();
+        for (Map<String, String> row : siteData.tableData) {
+            Map<String, String> newRow = new LinkedHashMap<>();
+            String siteId = row.getOrDefault("Site ID", "");
+            for (String header : finalHeaders) {
+                if (header.equals("Height (ft)")) {
+                    newRow.put(header, heightLookup.getOrDefault(siteId, ""));
+                } else {
+                    newRow.put(header, row.getOrDefault(header, ""));
+                }
+            }
+            processedData.add(newRow);
+        }
+        return new SheetData(finalHeaders, processedData);
+    }
+
+    SheetData processSectorsData(SheetData sectors, SheetData nrCarriers, SheetData antennas, SheetData electricalParams) {
+        if (sectors == null || nrCarriers == null || antennas == null || electricalParams == null) return null;
+        Map<String, String> pciLookup = new HashMap<>();
+        for (Map<String, String> row : nrCarriers.tableData) {
+            pciLookup.put(row.getOrDefault("Site ID", "") + "||" + row.getOrDefault("Sector ID", ""), row.get("Physical Cell ID"));
+        }
+        Map<String, Map<String, String>> antennaLookup = new HashMap<>();
+        for (Map<String, String> row : antennas.tableData) {
+            antennaLookup.put(row.getOrDefault("Site ID", "") + "||" + row.getOrDefault("Antenna ID", ""), row);
+        }
+        Map<String, String> electricalTiltLookup = new HashMap<>();
+        for (Map<String, String> paramsRow : electricalParams.tableData) {
+            String key = paramsRow.getOrDefault("Site ID", "") + paramsRow.getOrDefault("Antenna ID", "") + paramsRow.getOrDefault("Band Info", "");
+            if (!key.isEmpty()) {
+                electricalTiltLookup.put(key, paramsRow.getOrDefault("Electrical Tilt", ""));
+            }
+        }
+        List<String> finalHeaders = SECTOR_HEADERS;
+        List<Map<String, String>> processedData = new ArrayList<>();
+        for (Map<String, String> sectorRow : sectors.tableData) {
+            Map<String, String> newRow = new LinkedHashMap<>();
+            String siteId = sectorRow.getOrDefault("Site ID", "");
+            String originalSectorId = sectorRow.getOrDefault("Sector ID", "");
+            if (originalSectorId.isEmpty() || siteId.isEmpty()) continue;
+            String antennaId = antennaIdOf(originalSectorId);
+            String bandInfo = bandInfoOfSector(sectorRow.getOrDefault("Band Name", ""));
+            String key = siteId + antennaId + bandInfo;
+            String electricalTilt = electricalTiltLookup.getOrDefault(key, "");
+            Map<String, String> antennaData = antennaLookup.get(siteId + "||" + antennaId);
+            newRow.put("Site ID", siteId);
+            newRow.put("Band Name", sectorRow.getOrDefault("Band Name", ""));
+            newRow.put("Custom: NR_Cell_Global_ID", sectorRow.getOrDefault("Custom: NR_Cell_Global_Id", ""));
+            newRow.put("Custom: NR_Cell_Name", sectorRow.getOrDefault("Custom: NR_Cell_Name", ""));
+            newRow.put("Custom: RU_Model", sectorRow.getOrDefault("Custom: RU_Model", ""));
+            newRow.put("Sector ID", originalSectorId);
+            newRow.put("Physical Cell ID", pciLookup.getOrDefault(siteId + "||" + originalSectorId, ""));
+            newRow.put("Antenna ID", antennaId);
+            if (antennaData != null) {
+                newRow.put("Latitude", antennaData.getOrDefault("Latitude", ""));
+                newRow.put("Longitude", antennaData.getOrDefault("Longitude", ""));
+                newRow.put("Antenna File", antennaData.getOrDefault("Antenna File", "").replace(".pafx", ""));
+                newRow.put("Height (ft)", antennaData.getOrDefault("Height (ft)", ""));
+                newRow.put("Azimuth", antennaData.getOrDefault("Azimuth", ""));
+            } else {
+                newRow.put("Latitude", ""); newRow.put("Longitude", ""); newRow.put("Antenna File", "");
+                newRow.put("Height (ft)", ""); newRow.put("Azimuth", "");
+            }
+            newRow.put("Electrical Tilt", electricalTilt);
+            processedData.add(newRow);
+        }
+        return new SheetData(finalHeaders, processedData);
+    }
+
+    SheetData processElectricalParametersData(SheetData electricalParams) {
+        if (electricalParams == null) return null;
+        List<String> finalHeaders = new ArrayList<>(electricalParams.headers);
+        if (!finalHeaders.contains("Band Info")) finalHeaders.add("Band Info");
+        List<Map<String, String>> processedData = new ArrayList<>();
+        for (Map<String, String> electricalRow : electricalParams.tableData) {
+            Map<String, String> newRow = new LinkedHashMap<>(electricalRow);
+            newRow.put("Band Info", bandInfoFor(electricalRow));
+            processedData.add(newRow);
+        }
+        return new SheetData(finalHeaders, processedData);
+    }
+
+    String bandInfoFor(Map<String, String> electricalRow) {
+        String controller = electricalRow.getOrDefault("Electrical Controller", "");
+        return controllerRules.bandFor(controller);
+    }
+
+    /**
+     * The antenna ID a sector maps to: its Sector ID's last character when that is a digit.
+     */
+    static String antennaIdOf(String sectorId) {
+        if (!sectorId.isEmpty()) {
+            char lastChar = sectorId.charAt(sectorId.length() - 1);
+            if (Character.isDigit(lastChar)) return String.valueOf(lastChar);
+        }
+        return "";
+    }
+
+    /**
+     * Which tilt a sector reads: N29/N71 use the low band controllers, everything else mid band.
+     */
+    static String bandInfoOfSector(String bandName) {
+        String upperBandName = bandName.toUpperCase();
+        return (upperBandName.startsWith("N29") || upperBandName.startsWith("N71")) ? "LB Electrical Tilt" : "MB Electrical Tilt";
+    }
+
+    /**
+     * Reads one sheet from an .xlsx export, or its CSV file from a CSV export (a directory or .zip).
+     */
+    static SheetData readSheet(File export, String sheetName) throws Exception {
+        return CsvExportReader.isCsvExport(export) ? CsvExportReader.readSheet(export, sheetName) : processSheetWithSAX(export, sheetName);
+    }
+
+    /**
+     * Streaming form of {@link #readSheet}; see {@link #streamSheetWithSAX}.
+     */
+    static List<String> streamSheet(File export, String sheetName, Consumer<Map<String, String>> rowSink) throws Exception {
+        return CsvExportReader.isCsvExport(export) ? CsvExportReader.streamSheet(export, sheetName, rowSink) : streamSheetWithSAX(export, sheetName, rowSink);
+    }
+
+    static SheetData processSheetWithSAX(File file, String sheetNameToProcess) throws Exception {
+        List<Map<String, String>> tableData = new ArrayList<>();
+        List<String> headers = streamSheetWithSAX(file, sheetNameToProcess, tableData::add);
+        return headers == null ? null : new SheetData(headers, tableData);
+    }
+
+    /**
+     * Parses one sheet and hands each data row to {@code rowSink} as it is read instead of
+     * collecting them. Returns the sheet's headers, or null if the sheet does not exist.
+     */
+    static List<String> streamSheetWithSAX(File file, String sheetNameToProcess, Consumer<Map<String, String>> rowSink) throws Exception {
+        // Open read-only: a read-write package is saved back on close, which rewrites the user's export
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader r = new XSSFReader(pkg);
+            SharedStringsTable sst = (SharedStringsTable) r.getSharedStringsTable();
+            XMLReader parser = XMLReaderFactory.createXMLReader();
+            XSSFReader.SheetIterator iter = (XSSFReader.SheetIterator) r.getSheetsData();
+            while (iter.hasNext()) {
+                try (InputStream stream = iter.next()) {
+                    if (iter.getSheetName().equalsIgnoreCase(sheetNameToProcess)) {
+                        SheetContentHandler handler = new SheetContentHandler(sst, rowSink);
+                        parser.setContentHandler(handler);
+                        parser.parse(new InputSource(stream));
+                        return handler.getHeaders();
+                    }
+                }
+            }
+            System.err.println("Sheet '" + sheetNameToProcess + "' not found.");
+            return null;
+        }
+    }
+
+    private static class SheetContentHandler extends DefaultHandler {
+        private final SharedStringsTable sst;
+        private String lastContents;
+        private boolean nextIsString;
+        private boolean inlineString;
+        private final List<String> headers = new ArrayList<>();
+        private final List<String> currentRow = new ArrayList<>();
+        private final StringBuilder inlineText = new StringBuilder();
+        private final Consumer<Map<String, String>> rowSink;
+        private int currentCellColumn = -1;
+
+        private SheetContentHandler(SharedStringsTable sst, Consumer<Map<String, String>> rowSink) {
+            this.sst = sst;
+            this.rowSink = rowSink;
+        }
+        public List<String> getHeaders() { return headers; }
+
+        @Override
+        public void startElement(String uri, String localName, String name, Attributes attributes) {
+            if (name.equals("row")) {
+                currentCellColumn = -1;
+                currentRow.clear();
+            } else if (name.equals("c")) {
+                currentCellColumn = getColumnIndex(attributes.getValue("r"));
+                nextIsString = "s".equals(attributes.getValue("t"));
+                inlineString = "inlineStr".equals(attributes.getValue("t"));
+            } else if (name.equals("is")) {
+                inlineText.setLength(0);
+            }
+            lastContents = "";
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String name) {
+            if (inlineString && name.equals("t")) {
+                // Inline strings (<is><t>..</t></is>, possibly split into rich text runs) as written by non-Excel tools
+                inlineText.append(lastContents);
+            } else if (inlineString && name.equals("is")) {
+                setCell(inlineText.toString());
+            } else if (name.equals("v")) {
+                if (nextIsString) {
+                    try {
+                        int idx = Integer.parseInt(lastContents);
+                        lastContents = new XSSFRichTextString(sst.getItemAt(idx).getString()).toString();
+                    } catch (NumberFormatException e) {
+                        System.err.println("SAX Parser Warning: Could not parse shared string index '" + lastContents + "'.");
+                    }
+                }
+                setCell(lastContents);
+            } else if (name.equals("row")) {
+                if (headers.isEmpty() && !currentRow.stream().allMatch(String::isEmpty)) {
+                    headers.addAll(currentRow.stream().map(String::trim).collect(Collectors.toList()));
+                } else if (!headers.isEmpty()) {
+                    Map<String, String> rowMap = new LinkedHashMap<>();
+                    for (int i = 0; i < headers.size(); i++) {
+                        rowMap.put(headers.get(i), i < currentRow.size() ? currentRow.get(i) : "");
+                    }
+                    rowSink.accept(rowMap);
+                }
+                currentRow.clear();
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            lastContents += new String(ch, start, length);
+        }
+
+        private void setCell(String value) {
+            while (currentRow.size() <= currentCellColumn) {
+                currentRow.add("");
+            }
+            currentRow.set(currentCellColumn, value.trim());
+        }
+
+        private int getColumnIndex(String cellReference) {
+            if (cellReference == null) return -1;
+            String colRef = cellReference.replaceAll("\\d+", "");
+            int colIndex = 0;
+            for (int i = 0; i < colRef.length(); i++) {
+                colIndex = colIndex * 26 + (colRef.charAt(i) - 'A' + 1);
+            }
+            return colIndex - 1;
+        }
+    }
+}
@@ -1,26 +1,12 @@
 package com.echostar;
 
-import org.apache.poi.openxml4j.opc.OPCPackage;
-import org.apache.poi.xssf.eventusermodel.XSSFReader;
-import org.apache.poi.xssf.model.SharedStringsTable;
-import org.apache.poi.xssf.usermodel.XSSFRichTextString;
-import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
-
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -45,30 +31,18 @@ public class PlanetKMLCreator extends JFrame {
     private final JLabel statusLabel;
     private final JProgressBar progressBar;
     private final JButton kmlButton;
+    private final JButton serveButton;
+    private final JButton pciButton;
+    private final JButton exportButton;
     private DefaultTableModel controllersModel;
     private SheetData finalSectorsData;
     private SheetData finalSiteData;
-
-    /**
-     * Helper class to hold both the ordered headers and the data from a sheet.
-     */
-    private static class SheetData {
-        final List<String> headers;
-        final List<Map<String, String>> tableData;
-
-        SheetData(List<String> headers, List<Map<String, String>> tableData) {
-            this.headers = headers;
-            this.tableData = tableData;
-        }
-    }
-
-    // Helper class to store user's KML choices for each band
-    private static class BandSettings {
-        boolean include = true;
-        Color color = Color.BLUE;
-        int size = 500; // Default size in meters
-        int transparency = 50; // Default transparency (0-100)
-    }
+    private KmlTileServer tileServer;
+    private PciConflictAnalyzer pciAnalyzer; // Set once the user has run the PCI analysis
+    private SheetData pciConflictsData; // Conflicts shown in the PCI Conflicts tab, for Export Tables
+    private List<PciConflictAnalyzer.Conflict> pciConflicts; // The same conflicts, for the KML folder
+    private Map<String, Integer> pciRanges; // Band ranges the conflicts were found with
+    private Map<String, BandSettings> lastBandSettings; // Last confirmed band dialog, for the PCI ranges
 
     public PlanetKMLCreator() {
         super("KML Generator V1.2");
@@ -84,11 +58,20 @@ public class PlanetKMLCreator extends JFrame {
         JButton openButton = new JButton("Open Planet Export");
         kmlButton = new JButton("Generate KML");
         kmlButton.setEnabled(false); // Disabled by default
+        serveButton = new JButton("Serve to Google Earth");
+        serveButton.setEnabled(false);
+        pciButton = new JButton("Analyze PCI");
+        pciButton.setEnabled(false);
+        exportButton = new JButton("Export Tables");
+        exportButton.setEnabled(false);
         statusLabel = new JLabel("No file selected. Please open a large .xlsx file.");
         
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         buttonPanel.add(openButton);
         buttonPanel.add(kmlButton);
+        buttonPanel.add(serveButton);
+        buttonPanel.add(pciButton);
+        buttonPanel.add(exportButton);
         
         topPanel.add(buttonPanel, BorderLayout.WEST);
         topPanel.add(statusLabel, BorderLayout.CENTER);
@@ -120,40 +103,115 @@ public class PlanetKMLCreator extends JFrame {
 
         openButton.addActionListener(e -> openFile());
         kmlButton.addActionListener(e -> generateKML());
+        serveButton.addActionListener(e -> serveKML());
+        pciButton.addActionListener(e -> analyzePci());
+        exportButton.addActionListener(e -> exportTables());
     }
 
     private JPanel createControllersPanel() {
         JPanel controllerPanel = new JPanel(new BorderLayout(5, 5));
-        String[] columnNames = {"Electrical Controller", "Band"};
-        Object[][] data = {
-            {"R1", "LB Electrical Tilt"}, {"R2", "LB Electrical Tilt"}, {"B", "MB Electrical Tilt"},
-            {"Controller_617-894_12", "LB Electrical Tilt"}, {"Controller_617-894_34", "LB Electrical Tilt"},
-            {"Controller 1", "LB Electrical Tilt"}, {"Controller_1695-2690_56", "MB Electrical Tilt"},
-            {"Controller_1695-2690_78", "MB Electrical Tilt"}, {"Controller 2", "MB Electrical Tilt"},
-            {"Controller 3", "MB Electrical Tilt"}, {"Port 1-2", "LB Electrical Tilt"},
-            {"Y1", "MB Electrical Tilt"}, {"Y2", "MB Electrical Tilt"}, {"Port 3-4", "MB Electrical Tilt"},
-            {"Port 5-6", "MB Electrical Tilt"}, {"Port 1-4", "LB Electrical Tilt"},
-            {"Port 5-8", "MB Electrical Tilt"}, {"Port 9-10", "MB Electrical Tilt"},
-            {"Port 3-4", "LB Electrical Tilt"}, {"Port 7-8", "MB Electrical Tilt"},
-            {"R1 LB Controller", "LB Electrical Tilt"}, {"R2 LB Controller", "LB Electrical Tilt"},
-            {"Y1 HB Controller", "MB Electrical Tilt"}, {"Y2 HB Controller", "MB Electrical Tilt"}
-        };
-
-        controllersModel = new DefaultTableModel(data, columnNames);
+        String[] columnNames = {"Type", "Electrical Controller", "Band"};
+        controllersModel = new DefaultTableModel(loadControllerRules().toRows(), columnNames);
         JTable table = new JTable(controllersModel);
         table.setFillsViewportHeight(true);
+        table.putClientProperty("terminateEditOnFocusLost", Boolean.TRUE); // so a half-typed rule is in the snapshot
+        JComboBox<String> typeEditor = new JComboBox<>();
+        for (ControllerRules.Type type : ControllerRules.Type.values()) typeEditor.addItem(type.name());
+        table.getColumnModel().getColumn(0).setCellEditor(new DefaultCellEditor(typeEditor));
+        table.getColumnModel().getColumn(0).setMaxWidth(120);
         
         JButton addRowButton = new JButton("Add Row");
-        addRowButton.addActionListener(e -> controllersModel.addRow(new Object[]{"", ""}));
+        addRowButton.addActionListener(e -> controllersModel.addRow(new Object[]{ControllerRules.Type.EXACT.name(), "", ""}));
+        JButton loadRulesButton = new JButton("Load Rules...");
+        loadRulesButton.addActionListener(e -> loadRulesFromFile());
+        JButton saveRulesButton = new JButton("Save Rules...");
+        saveRulesButton.addActionListener(e -> saveRulesToFile());
         
         JPanel buttonPanelSouth = new JPanel(new FlowLayout(FlowLayout.CENTER));
         buttonPanelSouth.add(addRowButton);
+        buttonPanelSouth.add(loadRulesButton);
+        buttonPanelSouth.add(saveRulesButton);
         
         controllerPanel.add(new JScrollPane(table), BorderLayout.CENTER);
         controllerPanel.add(buttonPanelSouth, BorderLayout.SOUTH);
         return controllerPanel;
     }
 
+    /**
+     * The rules from the shared rules file (the same one the headless modes read), or the defaults.
+     */
+    private static ControllerRules loadControllerRules() {
+        try {
+            return ControllerRules.loadDefault();
+        } catch (Exception e) {
+            System.err.println("Could not load controller rules from " + ControllerRules.defaultFile() + ", using defaults: " + e.getMessage());
+            return ControllerRules.defaults();
+        }
+    }
+
+    /**
+     * Compiles the Controllers table into an immutable snapshot. Must run on the EDT; returns null
+     * (after telling the user) if a rule does not compile.
+     */
+    private ControllerRules snapshotControllerRules() {
+        Object[][] rows = new Object[controllersModel.getRowCount()][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[]{controllersModel.getValueAt(i, 0), controllersModel.getValueAt(i, 1), controllersModel.getValueAt(i, 2)};
+        }
+        try {
+            return ControllerRules.compile(ControllerRules.rulesOf(rows));
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Invalid Controller Rule", JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+    }
+
+    /**
+     * Default fan resolution with the shared antenna-pattern table, or null (after telling the user)
+     * if the table can't be read.
+     */
+    private FanGeometry loadFanGeometry() {
+        try {
+            return FanGeometry.loadDefault();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Could not read " + AntennaPatterns.defaultFile() + ":\n" + e.getMessage(), "Invalid Antenna Patterns", JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+    }
+
+    private void loadRulesFromFile() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Load Controller Rules");
+        fileChooser.setSelectedFile(ControllerRules.defaultFile());
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        try {
+            ControllerRules rules = ControllerRules.load(fileChooser.getSelectedFile());
+            controllersModel.setRowCount(0);
+            for (Object[] row : rules.toRows()) controllersModel.addRow(row);
+            statusLabel.setText("Loaded " + rules.rules().size() + " controller rules from " + fileChooser.getSelectedFile().getName());
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(this, "Could not load controller rules: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Saves the table, by default to the shared rules file so headless and watch runs pick it up.
+     */
+    private void saveRulesToFile() {
+        ControllerRules rules = snapshotControllerRules();
+        if (rules == null) return;
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Save Controller Rules");
+        fileChooser.setSelectedFile(ControllerRules.defaultFile());
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        try {
+            rules.save(fileChooser.getSelectedFile());
+            statusLabel.setText("Saved " + rules.rules().size() + " controller rules to " + fileChooser.getSelectedFile().getName());
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(this, "Could not save controller rules: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     private void openFile() {
         // Confirmation Dialog
         String confirmationMessage = "Do you have the latest Planet sheets required for processing?\n" +
@@ -162,21 +220,26 @@ public class PlanetKMLCreator extends JFrame {
 
         if (response == JOptionPane.YES_OPTION) {
             JFileChooser fileChooser = new JFileChooser();
-            fileChooser.setDialogTitle("Select an Excel File");
+            fileChooser.setDialogTitle("Select an Excel File or CSV Export");
+            // A CSV export is a folder or .zip of per-sheet .csv files, so folders can be chosen too
+            fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
             fileChooser.setFileFilter(new javax.swing.filechooser.FileFilter() {
                 public boolean accept(File f) {
-                    return f.getName().toLowerCase().endsWith(".xlsx") || f.isDirectory();
+                    String name = f.getName().toLowerCase();
+                    return name.endsWith(".xlsx") || name.endsWith(".zip") || f.isDirectory();
                 }
                 public String getDescription() {
-                    return "Excel Files (*.xlsx)";
+                    return "Excel Files (*.xlsx), CSV Exports (folder or *.zip)";
                 }
             });
 
             if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
                 File selectedFile = fileChooser.getSelectedFile();
+                ControllerRules controllerRules = snapshotControllerRules();
+                if (controllerRules == null) return;
                 statusLabel.setText("Loading file: " + selectedFile.getName());
                 // Use SwingWorker to process the file in the background
-                ExcelLoaderTask task = new ExcelLoaderTask(selectedFile);
+                ExcelLoaderTask task = new ExcelLoaderTask(selectedFile, controllerRules);
                 task.execute();
             }
         } else {
@@ -188,11 +251,14 @@ public class PlanetKMLCreator extends JFrame {
      * SwingWorker to load and process the Excel file in the background,
      * updating the GUI with progress.
      */
-    private class ExcelLoaderTask extends SwingWorker<Map<String, SheetData>, String> {
+    private class ExcelLoaderTask extends SwingWorker<PlanetExportProcessor.Result, String> {
         private final File excelFile;
+        private final ControllerRules controllerRules;
 
-        ExcelLoaderTask(File excelFile) {
+        // The rules are snapshotted on the EDT; the table model is not safe to read from the worker thread
+        ExcelLoaderTask(File excelFile, ControllerRules controllerRules) {
             this.excelFile = excelFile;
+            this.controllerRules = controllerRules;
         }
 
         @Override
@@ -203,11 +269,16 @@ public class PlanetKMLCreator extends JFrame {
         }
 
         @Override
-        protected Map<String, SheetData> doInBackground() throws Exception {
+        protected PlanetExportProcessor.Result doInBackground() throws Exception {
             SwingUtilities.invokeLater(() -> {
                 progressBar.setValue(0);
-                progressBar.setMaximum(8); // 5 sheets to read + 3 processing steps
+                progressBar.setMaximum(PlanetExportProcessor.SHEETS_TO_READ.length + 3); // sheets to read + 3 processing steps
                 progressBar.setVisible(true);
+                pciAnalyzer = null;
+                pciConflictsData = null;
+                pciConflicts = null;
+                pciRanges = null;
+                lastBandSettings = null;
                 // Clear old tabs
                 for (int i = tabbedPane.getTabCount() - 1; i >= 0; i--) {
                     if (!tabbedPane.getTitleAt(i).equals("Controllers")) {
@@ -216,31 +287,10 @@ public class PlanetKMLCreator extends JFrame {
                 }
             });
 
-            String[] sheetsToRead = { "Antennas", "Antenna_Electrical_Parameters", "Sectors", "NR_Sector_Carriers", "Sites" };
-            Map<String, SheetData> allSheetsData = new HashMap<>();
-
-            for (String sheetName : sheetsToRead) {
-                publish("Processing sheet: " + sheetName + "...");
-                SheetData sheetData = processSheetWithSAX(excelFile, sheetName);
-                if (sheetData != null) {
-                    allSheetsData.put(sheetName, sheetData);
-                }
-            }
-
-            publish("Processing Electrical Parameters...");
-            SheetData processedElectricalParams = processElectricalParametersData(allSheetsData.get("Antenna_Electrical_Parameters"));
-            allSheetsData.put("Processed_Electrical_Parameters", processedElectricalParams);
-
-            publish("Processing Site Data...");
-            finalSiteData = processSiteData(allSheetsData.get("Sites"), allSheetsData.get("Antennas"));
-
-            publish("Processing Sectors Data...");
-            finalSectorsData = processSectorsData(
-                allSheetsData.get("Sectors"), allSheetsData.get("NR_Sector_Carriers"),
-                allSheetsData.get("Antennas"), processedElectricalParams
-            );
-            
-            return allSheetsData;
+            PlanetExportProcessor.Result result = new PlanetExportProcessor(controllerRules).process(excelFile, message -> publish(message));
+            finalSiteData = result.siteData;
+            finalSectorsData = result.sectorsData;
+            return result;
         }
 
         @Override
@@ -264,12 +314,18 @@ public class PlanetKMLCreator extends JFrame {
                 
                 statusLabel.setText("Successfully loaded and processed: " + excelFile.getName());
                 kmlButton.setEnabled(true); // Enable KML button on success
+                serveButton.setEnabled(true);
+                pciButton.setEnabled(true);
+                exportButton.setEnabled(true);
 
             } catch (InterruptedException | ExecutionException e) {
                 statusLabel.setText("Error processing file: " + e.getCause().getMessage());
                 e.printStackTrace();
                 JOptionPane.showMessageDialog(PlanetKMLCreator.this, "Failed to process Excel file: \n" + e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
                 kmlButton.setEnabled(false); // Keep it disabled on error
+                serveButton.setEnabled(false);
+                pciButton.setEnabled(false);
+                exportButton.setEnabled(false);
             } finally {
                 progressBar.setVisible(false);
             }
@@ -277,123 +333,25 @@ public class PlanetKMLCreator extends JFrame {
     }
 
 
-    private SheetData processSiteData(SheetData siteData, SheetData antennasData) {
-        if (siteData == null) return null;
-        Map<String, String> heightLookup = new HashMap<>();
-        if (antennasData != null) {
-            for (Map<String, String> antennaRow : antennasData.tableData) {
-                String siteId = antennaRow.getOrDefault("Site ID", "");
-                if (!siteId.isEmpty() && !heightLookup.containsKey(siteId)) {
-                    heightLookup.put(siteId, antennaRow.getOrDefault("Height (ft)", ""));
-                }
-            }
-        }
-        List<String> finalHeaders = Arrays.asList("Site ID", "Longitude", "Latitude", "Site Name", "Custom: Cluster_ID", "Custom: gNodeB_Id", "Custom: gNodeB_Site_Number", "Custom: TAC", "Height (ft)");
-        List<Map<String, String>> processedData = new ArrayList<>();
-        for (Map<String, String> row : siteData.tableData) {
-            Map<String, String> newRow = new LinkedHashMap<>();
-            String siteId = row.getOrDefault("Site ID", "");
-            for (String header : finalHeaders) {
-                if (header.equals("Height (ft)")) {
-                    newRow.put(header, heightLookup.getOrDefault(siteId, ""));
-                } else {
-                    newRow.put(header, row.getOrDefault(header, ""));
-                }
-            }
-            processedData.add(newRow);
-        }
-        return new SheetData(finalHeaders, processedData);
-    }
-
-    private SheetData processSectorsData(SheetData sectors, SheetData nrCarriers, SheetData antennas, SheetData electricalParams) {
-        if (sectors == null || nrCarriers == null || antennas == null || electricalParams == null) return null;
-        Map<String, String> pciLookup = new HashMap<>();
-        for (Map<String, String> row : nrCarriers.tableData) {
-            pciLookup.put(row.getOrDefault("Site ID", "") + "||" + row.getOrDefault("Sector ID", ""), row.get("Physical Cell ID"));
-        }
-        Map<String, Map<String, String>> antennaLookup = new HashMap<>();
-        for (Map<String, String> row : antennas.tableData) {
-            antennaLookup.put(row.getOrDefault("Site ID", "") + "||" + row.getOrDefault("Antenna ID", ""), row);
-        }
-        Map<String, String> electricalTiltLookup = new HashMap<>();
-        for (Map<String, String> paramsRow : electricalParams.tableData) {
-            String key = paramsRow.getOrDefault("Site ID", "") + paramsRow.getOrDefault("Antenna ID", "") + paramsRow.getOrDefault("Band Info", "");
-            if (!key.isEmpty()) {
-                electricalTiltLookup.put(key, paramsRow.getOrDefault("Electrical Tilt", ""));
-            }
-        }
-        List<String> finalHeaders = Arrays.asList("Site ID", "Band Name", "Custom: NR_Cell_Global_ID", "Custom: NR_Cell_Name", "Custom: RU_Model", "Sector ID", "Physical Cell ID", "Antenna ID", "Latitude", "Longitude", "Antenna File", "Height (ft)", "Azimuth", "Electrical Tilt");
-        List<Map<String, String>> processedData = new ArrayList<>();
-        for (Map<String, String> sectorRow : sectors.tableData) {
-            Map<String, String> newRow = new LinkedHashMap<>();
-            String siteId = sectorRow.getOrDefault("Site ID", "");
-            String originalSectorId = sectorRow.getOrDefault("Sector ID", "");
-            if (originalSectorId.isEmpty() || siteId.isEmpty()) continue;
-            String antennaId = "";
-            if (!originalSectorId.isEmpty()) {
-                char lastChar = originalSectorId.charAt(originalSectorId.length() - 1);
-                if (Character.isDigit(lastChar)) antennaId = String.valueOf(lastChar);
-            }
-            String bandName = sectorRow.getOrDefault("Band Name", "").toUpperCase();
-            String bandInfo = (bandName.startsWith("N29") || bandName.startsWith("N71")) ? "LB Electrical Tilt" : "MB Electrical Tilt";
-            String key = siteId + antennaId + bandInfo;
-            String electricalTilt = electricalTiltLookup.getOrDefault(key, "");
-            Map<String, String> antennaData = antennaLookup.get(siteId + "||" + antennaId);
-            newRow.put("Site ID", siteId);
-            newRow.put("Band Name", sectorRow.getOrDefault("Band Name", ""));
-            newRow.put("Custom: NR_Cell_Global_ID", sectorRow.getOrDefault("Custom: NR_Cell_Global_Id", ""));
-            newRow.put("Custom: NR_Cell_Name", sectorRow.getOrDefault("Custom: NR_Cell_Name", ""));
-            newRow.put("Custom: RU_Model", sectorRow.getOrDefault("Custom: RU_Model", ""));
-            newRow.put("Sector ID", originalSectorId);
-            newRow.put("Physical Cell ID", pciLookup.getOrDefault(siteId + "||" + originalSectorId, ""));
-            newRow.put("Antenna ID", antennaId);
-            if (antennaData != null) {
-                newRow.put("Latitude", antennaData.getOrDefault("Latitude", ""));
-                newRow.put("Longitude", antennaData.getOrDefault("Longitude", ""));
-                newRow.put("Antenna File", antennaData.getOrDefault("Antenna File", "").replace(".pafx", ""));
-                newRow.put("Height (ft)", antennaData.getOrDefault("Height (ft)", ""));
-                newRow.put("Azimuth", antennaData.getOrDefault("Azimuth", ""));
-            } else {
-                newRow.put("Latitude", ""); newRow.put("Longitude", ""); newRow.put("Antenna File", "");
-                newRow.put("Height (ft)", ""); newRow.put("Azimuth", "");
-            }
-            newRow.put("Electrical Tilt", electricalTilt);
-            processedData.add(newRow);
-        }
-        return new SheetData(finalHeaders, processedData);
-    }
-
-    private SheetData processElectricalParametersData(SheetData electricalParams) {
-        if (electricalParams == null) return null;
-        Map<String, String> controllerBandLookup = new HashMap<>();
-        for (int i = 0; i < controllersModel.getRowCount(); i++) {
-            String controller = (String) controllersModel.getValueAt(i, 0);
-            String band = (String) controllersModel.getValueAt(i, 1);
-            if (controller != null && !controller.isEmpty()) {
-                controllerBandLookup.put(controller, band);
-            }
-        }
-        List<String> finalHeaders = new ArrayList<>(electricalParams.headers);
-        if (!finalHeaders.contains("Band Info")) finalHeaders.add("Band Info");
-        List<Map<String, String>> processedData = new ArrayList<>();
-        for (Map<String, String> electricalRow : electricalParams.tableData) {
-            Map<String, String> newRow = new LinkedHashMap<>(electricalRow);
-            String controller = electricalRow.getOrDefault("Electrical Controller", "");
-            newRow.put("Band Info", controllerBandLookup.getOrDefault(controller, ""));
-            processedData.add(newRow);
-        }
-        return new SheetData(finalHeaders, processedData);
-    }
-    
     private void generateKML() {
         if (finalSectorsData == null || finalSectorsData.tableData.isEmpty() || finalSiteData == null || finalSiteData.tableData.isEmpty()) {
             JOptionPane.showMessageDialog(this, "No data in the Sectors or Site tab to generate KML.", "No Data", JOptionPane.WARNING_MESSAGE);
             return;
         }
 
+        FanGeometry fanGeometry = loadFanGeometry();
+        if (fanGeometry == null) return;
         Set<String> uniqueBands = finalSectorsData.tableData.stream().map(row -> row.getOrDefault("Band Name", "Unknown")).collect(Collectors.toCollection(LinkedHashSet::new));
-        Map<String, BandSettings> bandSettings = showBandCustomizationDialog(uniqueBands);
+        JSpinner arcErrorSpinner = new JSpinner(new SpinnerNumberModel(FanGeometry.DEFAULT_MAX_ARC_ERROR_METERS, 0.1, 100.0, 0.5));
+        JSpinner vertexBudgetSpinner = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 100000));
+        JPanel fanPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        fanPanel.add(new JLabel("Max fan arc error (m):"));
+        fanPanel.add(arcErrorSpinner);
+        fanPanel.add(new JLabel("Fan vertex budget (0 = no limit):"));
+        fanPanel.add(vertexBudgetSpinner);
+        Map<String, BandSettings> bandSettings = showBandCustomizationDialog(uniqueBands, fanPanel);
         if (bandSettings == null) return;
+        FanGeometry exportGeometry = fanGeometry.withResolution((Double) arcErrorSpinner.getValue(), (Integer) vertexBudgetSpinner.getValue());
 
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Save KML File");
@@ -408,11 +366,178 @@ public class PlanetKMLCreator extends JFrame {
 
         if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
             File fileToSave = fileChooser.getSelectedFile();
-            KMLGeneratorTask task = new KMLGeneratorTask(fileToSave, bandSettings, uniqueBands);
+            KMLGeneratorTask task = new KMLGeneratorTask(fileToSave, bandSettings, uniqueBands, exportGeometry);
             task.execute();
         }
     }
 
+    /**
+     * Starts (or restarts) the local tile server with the loaded data and saves a launcher KML
+     * whose NetworkLink makes Google Earth fetch only the sectors in view.
+     */
+    private void serveKML() {
+        if (finalSectorsData == null || finalSectorsData.tableData.isEmpty() || finalSiteData == null || finalSiteData.tableData.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "No data in the Sectors or Site tab to serve.", "No Data", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
+        FanGeometry fanGeometry = loadFanGeometry();
+        if (fanGeometry == null) return;
+        Set<String> uniqueBands = finalSectorsData.tableData.stream().map(row -> row.getOrDefault("Band Name", "Unknown")).collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<String, BandSettings> bandSettings = showBandCustomizationDialog(uniqueBands, null);
+        if (bandSettings == null) return;
+
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Save Google Earth Launcher");
+        fileChooser.setSelectedFile(new File("planet-live.kml"));
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+
+        if (tileServer != null) tileServer.stop();
+        try {
+            FanGeometry tileGeometry = fanGeometry.withResolution(fanGeometry.maxArcErrorMeters, KmlTileServer.DEFAULT_TILE_VERTEX_BUDGET);
+            tileServer = new KmlTileServer(finalSiteData, finalSectorsData, bandSettings, tileGeometry, KmlTileServer.DEFAULT_MAX_SECTORS);
+            try {
+                tileServer.start(KmlTileServer.DEFAULT_PORT);
+            } catch (java.net.BindException e) {
+                tileServer.start(0); // Default port taken, let the OS pick one
+            }
+            tileServer.writeLauncher(fileChooser.getSelectedFile());
+            statusLabel.setText("Serving KML at " + tileServer.getBaseUrl() + " - open " + fileChooser.getSelectedFile().getName() + " in Google Earth");
+        } catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Could not start the KML server: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Asks for the neighbour distance and clash types, then finds PCI conflicts in the background
+     * and shows them in a PCI Conflicts tab. Later KML files get a highlighted PCI Conflicts folder.
+     * Fans reach as far as the band sizes last chosen in the band dialog (the defaults until then),
+     * and a KML drawn with other sizes refreshes the tab, so the tab, Export Tables and the KML
+     * folder list the same pairs.
+     */
+    private void analyzePci() {
+        if (finalSectorsData == null || finalSectorsData.tableData.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "No data in the Sectors tab to analyze.", "No Data", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        JSpinner distanceSpinner = new JSpinner(new SpinnerNumberModel((int) PciConflictAnalyzer.DEFAULT_MAX_DISTANCE_METERS, 0, 50000, 100));
+        JCheckBox mod3Box = new JCheckBox("Mod-3 clashes", true);
+        JCheckBox mod30Box = new JCheckBox("Mod-30 clashes", false);
+        JPanel panel = new JPanel(new GridLayout(0, 1, 5, 5));
+        panel.add(new JLabel("Neighbour distance (m); sectors with overlapping fans are always compared:"));
+        panel.add(distanceSpinner);
+        panel.add(mod3Box);
+        panel.add(mod30Box);
+        panel.add(new JLabel(lastBandSettings != null ? "Fan ranges: the band sizes last chosen in the band dialog" : "Fan ranges: the default band sizes"));
+        if (JOptionPane.showConfirmDialog(this, panel, "PCI Conflict Analysis", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) return;
+
+        FanGeometry fanGeometry = loadFanGeometry();
+        if (fanGeometry == null) return;
+        PciConflictAnalyzer analyzer = new PciConflictAnalyzer((Integer) distanceSpinner.getValue(), mod3Box.isSelected(), mod30Box.isSelected(), fanGeometry.antennaPatterns);
+        Set<String> uniqueBands = finalSectorsData.tableData.stream().map(row -> row.getOrDefault("Band Name", "Unknown")).collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<String, Integer> bandRanges = PciConflictAnalyzer.rangesOf(lastBandSettings != null ? lastBandSettings : BandSettings.defaultsFor(uniqueBands));
+        List<Map<String, String>> sectorRows = finalSectorsData.tableData;
+        pciButton.setEnabled(false);
+        statusLabel.setText("Analyzing PCI conflicts...");
+        new SwingWorker<List<PciConflictAnalyzer.Conflict>, Void>() {
+            private long elapsedMillis;
+
+            @Override
+            protected List<PciConflictAnalyzer.Conflict> doInBackground() {
+                long start = System.currentTimeMillis();
+                List<PciConflictAnalyzer.Conflict> conflicts = analyzer.analyze(sectorRows, bandRanges);
+                elapsedMillis = System.currentTimeMillis() - start;
+                return conflicts;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    List<PciConflictAnalyzer.Conflict> conflicts = get();
+                    pciAnalyzer = analyzer;
+                    showPciConflicts(conflicts, bandRanges);
+                    tabbedPane.setSelectedIndex(tabbedPane.getTabCount() - 1);
+                    statusLabel.setText("Found " + conflicts.size() + " PCI conflicts in " + elapsedMillis + " ms; the next KML will highlight them.");
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(PlanetKMLCreator.this, "PCI analysis failed: " + e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    statusLabel.setText("PCI analysis failed.");
+                } finally {
+                    pciButton.setEnabled(true);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Replaces the PCI Conflicts tab and the table Export Tables saves with {@code conflicts}.
+     */
+    private void showPciConflicts(List<PciConflictAnalyzer.Conflict> conflicts, Map<String, Integer> bandRanges) {
+        int existing = tabbedPane.indexOfTab("PCI Conflicts");
+        if (existing >= 0) tabbedPane.remove(existing);
+        pciConflicts = conflicts;
+        pciRanges = bandRanges;
+        pciConflictsData = PciConflictAnalyzer.toSheetData(conflicts);
+        JTable table = new JTable(createTableModel(pciConflictsData));
+        table.setAutoCreateRowSorter(true);
+        tabbedPane.addTab("PCI Conflicts", new JScrollPane(table));
+    }
+
+    /**
+     * Saves the merged Sites and Sectors tables (and the PCI conflicts, if analyzed) as one .xlsx
+     * workbook or as one .csv file per table, streaming from the loaded rows in the background.
+     */
+    private void exportTables() {
+        if (finalSectorsData == null || finalSiteData == null) {
+            JOptionPane.showMessageDialog(this, "No data loaded to export.", "No Data", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Export Tables");
+        javax.swing.filechooser.FileNameExtensionFilter xlsxFilter = new javax.swing.filechooser.FileNameExtensionFilter("Excel Workbook (*.xlsx)", "xlsx");
+        javax.swing.filechooser.FileNameExtensionFilter csvFilter = new javax.swing.filechooser.FileNameExtensionFilter("CSV, one file per table (*.csv)", "csv");
+        fileChooser.addChoosableFileFilter(xlsxFilter);
+        fileChooser.addChoosableFileFilter(csvFilter);
+        fileChooser.setFileFilter(xlsxFilter);
+        fileChooser.setSelectedFile(new File("tables.xlsx"));
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+
+        File selected = fileChooser.getSelectedFile();
+        String name = selected.getName().toLowerCase();
+        if (!name.endsWith(".xlsx") && !name.endsWith(".csv")) {
+            selected = new File(selected.getPath() + (fileChooser.getFileFilter() == csvFilter ? ".csv" : ".xlsx"));
+        }
+        File fileToSave = selected;
+        Map<String, SheetData> tables = new LinkedHashMap<>();
+        tables.put("Sites", finalSiteData);
+        tables.put("Sectors", finalSectorsData);
+        if (pciConflictsData != null) tables.put("PCI Conflicts", pciConflictsData);
+        exportButton.setEnabled(false);
+        statusLabel.setText("Exporting tables...");
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                TableExporter.export(tables, fileToSave);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    statusLabel.setText("Tables exported to " + fileToSave.getName());
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(PlanetKMLCreator.this, "Error exporting tables: " + e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    statusLabel.setText("Error exporting tables.");
+                } finally {
+                    exportButton.setEnabled(true);
+                }
+            }
+        }.execute();
+    }
+
     /**
      * SwingWorker to generate the KML file in the background.
      */
@@ -420,11 +545,24 @@ public class PlanetKMLCreator extends JFrame {
         private final File fileToSave;
         private final Map<String, BandSettings> bandSettings;
         private final Set<String> uniqueBands;
-
-        KMLGeneratorTask(File fileToSave, Map<String, BandSettings> bandSettings, Set<String> uniqueBands) {
+        private final PciConflictAnalyzer conflictAnalyzer;
+        private final List<PciConflictAnalyzer.Conflict> analyzedConflicts;
+        private final Map<String, Integer> analyzedRanges;
+        private final Map<String, Integer> bandRanges;
+        private final FanGeometry fanGeometry;
+        /** Set when the chosen band sizes differ from the analysis and the conflicts were found again. */
+        private List<PciConflictAnalyzer.Conflict> reanalyzedConflicts;
+        private long clampedFans;
+
+        KMLGeneratorTask(File fileToSave, Map<String, BandSettings> bandSettings, Set<String> uniqueBands, FanGeometry fanGeometry) {
             this.fileToSave = fileToSave;
             this.bandSettings = bandSettings;
             this.uniqueBands = uniqueBands;
+            this.fanGeometry = fanGeometry;
+            this.conflictAnalyzer = pciAnalyzer;
+            this.analyzedConflicts = pciConflicts;
+            this.analyzedRanges = pciRanges;
+            this.bandRanges = PciConflictAnalyzer.rangesOf(bandSettings);
         }
 
         @Override
@@ -442,71 +580,18 @@ public class PlanetKMLCreator extends JFrame {
                 statusLabel.setText("Generating KML file...");
             });
 
-            int progress = 0;
-            try (FileWriter writer = new FileWriter(fileToSave)) {
-                writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n<Document>\n");
-                writer.write(getSiteStyle());
-                writer.write("<Style id=\"label-style\"><IconStyle><scale>0</scale></IconStyle><LabelStyle><color>ffffffff</color><scale>0.8</scale></LabelStyle></Style>\n");
-                for (Map.Entry<String, BandSettings> entry : bandSettings.entrySet()) {
-                    if (entry.getValue().include) {
-                        writer.write(createKMLStyle(entry.getKey(), entry.getValue().color, entry.getValue().transparency));
-                    }
-                }
-
-                writer.write("<Folder>\n<name>SITES</name>\n");
-                for (Map<String, String> siteRow : finalSiteData.tableData) {
-                    writer.write(createSitePlacemark(siteRow));
-                    publish(++progress);
-                }
-                writer.write("</Folder>\n");
-
-                writer.write("<Folder>\n<name>SECTORS</name>\n");
-                Map<String, List<Map<String, String>>> sectorsByBand = finalSectorsData.tableData.stream().collect(Collectors.groupingBy(row -> row.getOrDefault("Band Name", "Unknown")));
-                
-                List<String> bandOrder = new ArrayList<>(uniqueBands);
-                bandOrder.sort((band1, band2) -> {
-                    BandSettings settings1 = bandSettings.get(band1);
-                    BandSettings settings2 = bandSettings.get(band2);
-                    return Integer.compare(settings2.size, settings1.size);
-                });
-
-                for (int i = 0; i < bandOrder.size(); i++) {
-                    String bandName = bandOrder.get(i);
-                    List<Map<String, String>> rowsForBand = sectorsByBand.get(bandName);
-                    BandSettings settings = bandSettings.get(bandName);
-                    if (settings != null && settings.include && rowsForBand != null) {
-                        writer.write("<Folder>\n<name>" + bandName + "</name>\n");
-                        for (Map<String, String> row : rowsForBand) {
-                            writer.write(createSectorPlacemark(row, bandName, settings.size, i));
-                            publish(++progress);
-                        }
-                        writer.write("</Folder>\n");
-                    }
-                }
-                writer.write("</Folder>\n");
-
-                writer.write("<Folder>\n<name>Display</name>\n");
-                List<String> displayHeaders = Arrays.asList("Physical Cell ID", "Electrical Tilt", "Azimuth");
-                for (String header : displayHeaders) {
-                    writer.write("<Folder>\n<name>" + header + "</name>\n");
-                    for (Map.Entry<String, List<Map<String, String>>> bandEntry : sectorsByBand.entrySet()) {
-                        String bandName = bandEntry.getKey();
-                        BandSettings settings = bandSettings.get(bandName);
-                        boolean createBandFolder = header.equals("Electrical Tilt") || bandName.toUpperCase().contains("N71");
-                        if (createBandFolder && settings != null && settings.include) {
-                            writer.write("<Folder>\n<name>" + bandName + "</name>\n");
-                            for (Map<String, String> row : bandEntry.getValue()) {
-                                writer.write(createLabelPlacemark(row, header, settings.size));
-                                publish(++progress);
-                            }
-                            writer.write("</Folder>\n");
-                        }
-                    }
-                    writer.write("</Folder>\n");
-                }
-                writer.write("</Folder>\n");
+            // Conflicts must match the fans drawn: re-run the analysis if the band sizes changed since
+            List<PciConflictAnalyzer.Conflict> conflicts = Collections.emptyList();
+            if (conflictAnalyzer != null && bandRanges.equals(analyzedRanges)) {
+                conflicts = analyzedConflicts;
+            } else if (conflictAnalyzer != null) {
+                conflicts = conflictAnalyzer.analyze(finalSectorsData.tableData, bandRanges);
+                reanalyzedConflicts = conflicts;
+            }
 
-                writer.write("</Document>\n</kml>\n");
+            KmlWriter kmlWriter = new KmlWriter(bandSettings, fanGeometry);
+            try (FileWriter writer = new FileWriter(fileToSave)) {
+                clampedFans = kmlWriter.writeDocument(writer, finalSiteData.tableData, KmlWriter.groupByBand(finalSectorsData.tableData), uniqueBands, conflicts, progress -> publish(progress));
             }
             return null;
         }
@@ -515,8 +600,12 @@ public class PlanetKMLCreator extends JFrame {
         protected void done() {
             try {
                 get();
+                // Keep the tab and Export Tables in step with the folder just written
+                if (reanalyzedConflicts != null && conflictAnalyzer == pciAnalyzer) showPciConflicts(reanalyzedConflicts, bandRanges);
                 JOptionPane.showMessageDialog(PlanetKMLCreator.this, "KML file generated successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-                statusLabel.setText("KML file saved to " + fileToSave.getName());
+                statusLabel.setText("KML file saved to " + fileToSave.getName()
+                    + (reanalyzedConflicts != null && conflictAnalyzer == pciAnalyzer ? "; PCI Conflicts updated for the new band sizes (" + reanalyzedConflicts.size() + ")" : "")
+                    + (clampedFans > 0 ? "; " + clampedFans + " fans capped at " + FanGeometry.MAX_ARC_SEGMENTS + " arc segments, so beyond the arc error" : ""));
             } catch (InterruptedException | ExecutionException e) {
                 e.printStackTrace();
                 JOptionPane.showMessageDialog(PlanetKMLCreator.this, "Error generating KML file: " + e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
@@ -527,7 +616,10 @@ public class PlanetKMLCreator extends JFrame {
         }
     }
 
-    private Map<String, BandSettings> showBandCustomizationDialog(Set<String> bands) {
+    /**
+     * Asks for each band's settings; {@code extraOptions}, if not null, is shown below the bands.
+     */
+    private Map<String, BandSettings> showBandCustomizationDialog(Set<String> bands, JComponent extraOptions) {
         JPanel panel = new JPanel(new GridBagLayout());
         GridBagConstraints gbc = new GridBagConstraints();
         gbc.insets = new Insets(2, 5, 2, 5);
@@ -550,18 +642,10 @@ public class PlanetKMLCreator extends JFrame {
         panel.add(new JLabel(""), gbc); // Empty header for the percentage value
         gbc.gridy++;
         
-        Color[] brightColors = {Color.CYAN, Color.MAGENTA, Color.YELLOW, Color.GREEN, Color.ORANGE, Color.PINK};
         int colorIndex = 0;
 
         for (String band : bands) {
-            BandSettings settings = new BandSettings();
-            String upperBand = band.toUpperCase();
-            if (upperBand.contains("N71")) settings.size = 500;
-            else if (upperBand.contains("N70")) settings.size = 400;
-            else if (upperBand.contains("N66")) settings.size = 350;
-            else if (upperBand.contains("N29")) settings.size = 300;
-            else settings.size = 500;
-            settings.color = brightColors[colorIndex++ % brightColors.length];
+            BandSettings settings = BandSettings.defaultFor(band, colorIndex++);
             settingsMap.put(band, settings);
 
             gbc.gridx = 0;
@@ -619,7 +703,11 @@ public class PlanetKMLCreator extends JFrame {
         JScrollPane scrollPane = new JScrollPane(panel);
         scrollPane.setPreferredSize(new Dimension(650, 400)); // Widen the dialog slightly
 
-        int result = JOptionPane.showConfirmDialog(this, scrollPane, "Customize KML Bands", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        JPanel dialogPanel = new JPanel(new BorderLayout(5, 5));
+        dialogPanel.add(scrollPane, BorderLayout.CENTER);
+        if (extraOptions != null) dialogPanel.add(extraOptions, BorderLayout.SOUTH);
+
+        int result = JOptionPane.showConfirmDialog(this, dialogPanel, "Customize KML Bands", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
         if (result == JOptionPane.OK_OPTION) {
             for (String band : bands) {
                 BandSettings settings = settingsMap.get(band);
@@ -627,168 +715,12 @@ public class PlanetKMLCreator extends JFrame {
                 settings.size = (int) sizeSpinners.get(band).getValue();
                 settings.transparency = (int) transparencySpinners.get(band).getValue();
             }
+            lastBandSettings = settingsMap;
             return settingsMap;
         }
         return null;
     }
 
-    private String getSiteStyle() {
-        // Boost Mobile orange: #f26522. KML color (AABBGGRR): ff2265f2
-        String boostOrange = "ff2265f2";
-        return "<Style id=\"normPointStyle\">\n" +
-               "    <IconStyle>\n" +
-               "        <scale>0.8</scale>\n" +
-               "        <Icon>\n" +
-               "            <href>https://i.ibb.co/5YtdGtG/LOGO-PLOT-TRNS.png</href>\n" +
-               "        </Icon>\n" +
-               "        <hotSpot x=\"0.5\" y=\"0.5\" xunits=\"fraction\" yunits=\"fraction\"/>\n" +
-               "    </IconStyle>\n" +
-               "    <LabelStyle>\n" +
-               "        <color>ffffffff</color>\n" +
-               "        <scale>1.0</scale>\n" +
-               "    </LabelStyle>\n" +
-               "    <LineStyle>\n" +
-               "        <color>" + boostOrange + "</color>\n" +
-               "        <width>10</width>\n" +
-               "    </LineStyle>\n" +
-               "</Style>\n" +
-               "<StyleMap id=\"site-icon\">\n" +
-               "    <Pair>\n" +
-               "        <key>normal</key>\n" +
-               "        <styleUrl>#normPointStyle</styleUrl>\n" +
-               "    </Pair>\n" +
-               "    <Pair>\n" +
-               "        <key>highlight</key>\n" +
-               "        <styleUrl>#normPointStyle</styleUrl>\n" +
-               "    </Pair>\n" +
-               "</StyleMap>\n" +
-               "<Style id=\"site-line\"><LineStyle><color>" + boostOrange + "</color><width>15</width></LineStyle></Style>\n";
-    }
-
-    private String createKMLStyle(String id, Color color, int transparencyPercent) {
-        String safeId = id.replaceAll("[^a-zA-Z0-9]", "");
-        
-        // Calculate opacity from the transparency percentage.
-        // In KML, alpha FF is opaque, 00 is transparent.
-        // The slider is for transparency (0=opaque, 100=transparent), so we convert it to opacity for KML.
-        int opacityPercent = 100 - transparencyPercent;
-        int alpha = (int) Math.round(opacityPercent * 2.55); // (percent/100) * 255
-        String alphaHex = String.format("%02x", alpha);
-        
-        // Full KML color string (AABBGGRR)
-        String kmlColor = String.format("%s%02x%02x%02x", alphaHex, color.getBlue(), color.getGreen(), color.getRed());
-        
-        return String.format("<Style id=\"%s\"><LineStyle><color>ff%s</color></LineStyle><PolyStyle><color>%s</color></PolyStyle></Style>\n", safeId, kmlColor.substring(2), kmlColor);
-    }
-
-    private String createSitePlacemark(Map<String, String> row) {
-        String siteId = row.getOrDefault("Site ID", "N/A");
-        String lon = row.getOrDefault("Longitude", "0");
-        String lat = row.getOrDefault("Latitude", "0");
-        String heightFt = row.getOrDefault("Height (ft)", "0");
-        double heightMeters = 0;
-        try { heightMeters = Double.parseDouble(heightFt) * 0.3048; } catch (NumberFormatException ignored) {}
-        
-        StringBuilder sb = new StringBuilder();
-        sb.append("<Placemark>\n<name>").append(siteId).append(" (").append(heightFt).append(" ft)</name>\n");
-        sb.append("<styleUrl>#site-icon</styleUrl>\n<ExtendedData>\n<SchemaData schemaUrl=\"#SITES_SCHEME_ID\">\n");
-        for (Map.Entry<String, String> entry : row.entrySet()) {
-            sb.append("<SimpleData name=\"").append(entry.getKey().replaceAll("[^a-zA-Z0-9]", "")).append("\">").append(entry.getValue()).append("</SimpleData>\n");
-        }
-        sb.append("</SchemaData>\n</ExtendedData>\n<Point>\n<extrude>1</extrude>\n<altitudeMode>relativeToGround</altitudeMode>\n");
-        sb.append("<coordinates>").append(lon).append(",").append(lat).append(",").append(heightMeters).append("</coordinates>\n");
-        sb.append("</Point>\n</Placemark>\n");
-        return sb.toString();
-    }
-
-    private String createSectorPlacemark(Map<String, String> row, String bandName, int range, int bandIndex) {
-        StringBuilder sb = new StringBuilder();
-        try {
-            double lat = Double.parseDouble(row.getOrDefault("Latitude", "0"));
-            double lon = Double.parseDouble(row.getOrDefault("Longitude", "0"));
-            double azimuth = Double.parseDouble(row.getOrDefault("Azimuth", "0"));
-            double height = (Double.parseDouble(row.getOrDefault("Height (ft)", "0")) * 0.3048) + (bandIndex * 0.1); // Add 10cm offset per band
-            
-            sb.append("<Placemark>\n<name>").append(row.getOrDefault("Custom: NR_Cell_Name", "N/A")).append("</name>\n");
-            sb.append("<styleUrl>#").append(bandName.replaceAll("[^a-zA-Z0-9]", "")).append("</styleUrl>\n");
-            sb.append("<ExtendedData>\n<SchemaData schemaUrl=\"#SECTORS_SCHEME_ID\">\n");
-            for (Map.Entry<String, String> entry : row.entrySet()) {
-                sb.append("<SimpleData name=\"").append(entry.getKey().replaceAll("[^a-zA-Z0-9]", "")).append("\">").append(entry.getValue()).append("</SimpleData>\n");
-            }
-            sb.append("</SchemaData>\n</ExtendedData>\n");
-            sb.append("<Polygon>\n<altitudeMode>relativeToGround</altitudeMode>\n<outerBoundaryIs>\n<LinearRing>\n<coordinates>\n");
-            sb.append(lon).append(",").append(lat).append(",").append(height).append("\n");
-            double beamwidth = 65.0;
-            for (int i = 0; i <= 10; i++) {
-                double angle = azimuth - (beamwidth / 2) + (beamwidth * i / 10);
-                double[] newCoords = getDestinationPoint(lat, lon, angle, range);
-                sb.append(newCoords[1]).append(",").append(newCoords[0]).append(",").append(height).append("\n");
-            }
-            sb.append(lon).append(",").append(lat).append(",").append(height).append("\n");
-            sb.append("</coordinates>\n</LinearRing>\n</outerBoundaryIs>\n</Polygon>\n</Placemark>\n");
-        } catch (NumberFormatException e) {
-            System.err.println("Could not parse number for placemark: " + row.get("Sector ID"));
-        }
-        return sb.toString();
-    }
-
-    private String createLabelPlacemark(Map<String, String> row, String header, int range) {
-        StringBuilder sb = new StringBuilder();
-        try {
-            String labelText = row.getOrDefault(header, "");
-            if (!labelText.isEmpty()) {
-                double lat = Double.parseDouble(row.getOrDefault("Latitude", "0"));
-                double lon = Double.parseDouble(row.getOrDefault("Longitude", "0"));
-                double azimuth = Double.parseDouble(row.getOrDefault("Azimuth", "0"));
-                double height = Double.parseDouble(row.getOrDefault("Height (ft)", "0")) * 0.3048;
-                double distance = header.equals("Electrical Tilt") ? range : range / 2.0;
-                double[] labelCoords = getDestinationPoint(lat, lon, azimuth, distance);
-                sb.append("<Placemark>\n<name>").append(labelText).append("</name>\n<styleUrl>#label-style</styleUrl>\n");
-                sb.append("<ExtendedData>\n<SchemaData schemaUrl=\"#SECTORS_SCHEME_ID\">\n");
-                sb.append("<SimpleData name=\"PhysicalCellID\">").append(row.getOrDefault("Physical Cell ID", "")).append("</SimpleData>\n");
-                sb.append("<SimpleData name=\"Heightft\">").append(row.getOrDefault("Height (ft)", "")).append("</SimpleData>\n");
-                sb.append("<SimpleData name=\"ElectricalTilt\">").append(row.getOrDefault("Electrical Tilt", "")).append("</SimpleData>\n");
-                sb.append("</SchemaData>\n</ExtendedData>\n<Point>\n<altitudeMode>relativeToGround</altitudeMode>\n");
-                sb.append("<coordinates>").append(labelCoords[1]).append(",").append(labelCoords[0]).append(",").append(height).append("</coordinates>\n");
-                sb.append("</Point>\n</Placemark>\n");
-            }
-        } catch (NumberFormatException e) {
-            System.err.println("Could not parse number for label placemark: " + row.get("Sector ID"));
-        }
-        return sb.toString();
-    }
-
-    private double[] getDestinationPoint(double lat, double lon, double bearing, double distance) {
-        double R = 6371e3;
-        double latRad = Math.toRadians(lat);
-        double lonRad = Math.toRadians(lon);
-        double bearingRad = Math.toRadians(bearing);
-        double lat2Rad = Math.asin(Math.sin(latRad) * Math.cos(distance / R) + Math.cos(latRad) * Math.sin(distance / R) * Math.cos(bearingRad));
-        double lon2Rad = lonRad + Math.atan2(Math.sin(bearingRad) * Math.sin(distance / R) * Math.cos(latRad), Math.cos(distance / R) - Math.sin(latRad) * Math.sin(lat2Rad));
-        return new double[]{Math.toDegrees(lat2Rad), Math.toDegrees(lon2Rad)};
-    }
-
-    public SheetData processSheetWithSAX(File file, String sheetNameToProcess) throws Exception {
-        try (OPCPackage pkg = OPCPackage.open(file.getPath())) {
-            XSSFReader r = new XSSFReader(pkg);
-            SharedStringsTable sst = (SharedStringsTable) r.getSharedStringsTable();
-            XMLReader parser = XMLReaderFactory.createXMLReader();
-            XSSFReader.SheetIterator iter = (XSSFReader.SheetIterator) r.getSheetsData();
-            while (iter.hasNext()) {
-                try (InputStream stream = iter.next()) {
-                    if (iter.getSheetName().equalsIgnoreCase(sheetNameToProcess)) {
-                        SheetContentHandler handler = new SheetContentHandler(sst);
-                        parser.setContentHandler(handler);
-                        parser.parse(new InputSource(stream));
-                        return new SheetData(handler.getHeaders(), handler.getTableData());
-                    }
-                }
-            }
-            System.err.println("Sheet '" + sheetNameToProcess + "' not found.");
-            return null;
-        }
-    }
-
     private DefaultTableModel createTableModel(SheetData sheetData) {
         if (sheetData == null || sheetData.tableData.isEmpty()) return new DefaultTableModel();
         Vector<String> columnHeaders = new Vector<>(sheetData.headers);
@@ -803,77 +735,47 @@ public class PlanetKMLCreator extends JFrame {
         return new DefaultTableModel(dataVector, columnHeaders);
     }
 
-    private static class SheetContentHandler extends DefaultHandler {
-        private final SharedStringsTable sst;
-        private String lastContents;
-        private boolean nextIsString;
-        private final List<String> headers = new ArrayList<>();
-        private final List<String> currentRow = new ArrayList<>();
-        private final List<Map<String, String>> tableData = new ArrayList<>();
-        private int currentCellColumn = -1;
-
-        private SheetContentHandler(SharedStringsTable sst) { this.sst = sst; }
-        public List<Map<String, String>> getTableData() { return tableData; }
-        public List<String> getHeaders() { return headers; }
-
-        @Override
-        public void startElement(String uri, String localName, String name, Attributes attributes) {
-            if (name.equals("row")) {
-                currentCellColumn = -1;
-                currentRow.clear();
-            } else if (name.equals("c")) {
-                currentCellColumn = getColumnIndex(attributes.getValue("r"));
-                nextIsString = "s".equals(attributes.getValue("t"));
-            }
-            lastContents = "";
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "";
+        switch (mode) {
+            case "--watch":
+                WatchFolderService.main(args);
+                return;
+            case "--kml":
+                HeadlessExport.main(args);
+                return;
+            case "--serve":
+                KmlTileServer.main(args);
+                return;
+            case "--train":
+                StartupBenchmark.train();
+                return;
+            case "--bench-startup":
+                StartupBenchmark.main(args);
+                return;
+            case "--pci-conflicts":
+                PciConflictAnalyzer.main(args);
+                return;
+            case "--export-tables":
+                TableExporter.main(args);
+                return;
+            case "--xlsx-to-csv":
+                CsvExportReader.main(args);
+                return;
+            case "--bench-csv":
+                CsvExportReader.bench(args);
+                return;
+            case "--generate":
+                SyntheticExportGenerator.main(args);
+                return;
+            case "--first-parse":
+                StartupBenchmark.firstParse(new File(args[1]), args.length > 3 && args[3].equals("--warmup"), Long.parseLong(args[2]));
+                return;
+            default:
+                break;
         }
-
-        @Override
-        public void endElement(String uri, String localName, String name) {
-            if (name.equals("v")) {
-                if (nextIsString) {
-                    try {
-                        int idx = Integer.parseInt(lastContents);
-                        lastContents = new XSSFRichTextString(sst.getItemAt(idx).getString()).toString();
-                    } catch (NumberFormatException e) {
-                        System.err.println("SAX Parser Warning: Could not parse shared string index '" + lastContents + "'.");
-                    }
-                }
-                while (currentRow.size() <= currentCellColumn) {
-                    currentRow.add("");
-                }
-                currentRow.set(currentCellColumn, lastContents.trim());
-            } else if (name.equals("row")) {
-                if (headers.isEmpty() && !currentRow.stream().allMatch(String::isEmpty)) {
-                    headers.addAll(currentRow.stream().map(String::trim).collect(Collectors.toList()));
-                } else if (!headers.isEmpty()) {
-                    Map<String, String> rowMap = new LinkedHashMap<>();
-                    for (int i = 0; i < headers.size(); i++) {
-                        rowMap.put(headers.get(i), i < currentRow.size() ? currentRow.get(i) : "");
-                    }
-                    tableData.add(rowMap);
-                }
-                currentRow.clear();
-            }
-        }
-
-        @Override
-        public void characters(char[] ch, int start, int length) {
-            lastContents += new String(ch, start, length);
-        }
-
-        private int getColumnIndex(String cellReference) {
-            if (cellReference == null) return -1;
-            String colRef = cellReference.replaceAll("\\d+", "");
-            int colIndex = 0;
-            for (int i = 0; i < colRef.length(); i++) {
-                colIndex = colIndex * 26 + (colRef.charAt(i) - 'A' + 1);
-            }
-            return colIndex - 1;
-        }
-    }
-
-    public static void main(String[] args) {
+        // Load POI/XMLBeans on a background thread while the frame comes up
+        PoiWarmup.start();
         SwingUtilities.invokeLater(() -> {
             PlanetKMLCreator viewer = new PlanetKMLCreator();
             viewer.setVisible(true);
@@ -0,0 +1,87 @@
+package com.echostar;
+
+import java.io.File;
+
+/**
+ * Gets POI, XMLBeans and the SAX parser loaded and past their first-use initialisation before the
+ * user opens an export. Started on a daemon thread while the JFrame comes up; the confirm dialog
+ * and file chooser give it a few seconds, so the first real parse runs at warm speed.
+ */
+class PoiWarmup {
+
+    /** Classes on the parse path that are slow to load and initialise the first time. */
+    private static final String[] PARSE_PATH_CLASSES = {
+        "org.apache.poi.openxml4j.opc.OPCPackage",
+        "org.apache.poi.openxml4j.opc.ZipPackage",
+        "org.apache.poi.xssf.eventusermodel.XSSFReader",
+        "org.apache.poi.xssf.model.SharedStringsTable",
+        "org.apache.poi.xssf.usermodel.XSSFRichTextString",
+        "org.apache.xmlbeans.impl.schema.SchemaTypeSystemImpl",
+        "org.openxmlformats.schemas.spreadsheetml.x2006.main.SstDocument",
+        "org.xml.sax.helpers.XMLReaderFactory",
+    };
+
+    /** Swing classes the GUI touches after the frame is shown; loaded (not initialised) for the CDS archive. */
+    static final String[] GUI_CLASSES = {
+        "javax.swing.JFileChooser", "javax.swing.JOptionPane", "javax.swing.JTable", "javax.swing.JColorChooser",
+        "javax.swing.JSpinner", "javax.swing.JSlider", "javax.swing.SpinnerNumberModel", "javax.swing.table.DefaultTableModel",
+        "javax.swing.plaf.basic.BasicFileChooserUI", "javax.swing.plaf.metal.MetalFileChooserUI",
+    };
+
+    private static volatile Thread warmupThread;
+
+    /**
+     * Starts the warm-up in the background and returns immediately.
+     */
+    static synchronized void start() {
+        if (warmupThread != null) return;
+        warmupThread = new Thread(() -> {
+            try {
+                warmUp();
+            } catch (Exception e) {
+                // Only a head start; the real parse will load whatever is missing
+                System.err.println("POI warm-up skipped: " + e.getMessage());
+            }
+        }, "poi-warmup");
+        warmupThread.setDaemon(true);
+        warmupThread.setPriority(Thread.MIN_PRIORITY);
+        warmupThread.start();
+    }
+
+    /**
+     * Loads the parse path classes and runs the full loader over a tiny synthetic export, which is
+     * what pulls in the XMLBeans schema types and JIT-compiles the SAX handler's hot methods.
+     */
+    static void warmUp() throws Exception {
+        ClassLoader loader = PoiWarmup.class.getClassLoader();
+        for (String className : PARSE_PATH_CLASSES) {
+            try {
+                Class.forName(className, true, loader);
+            } catch (ClassNotFoundException e) {
+                // Not on this classpath (e.g. a different POI schema jar); skip it
+            }
+        }
+        // Generated once and reused, so later launches only pay for the parse
+        File sample = new File(System.getProperty("java.io.tmpdir"), "planetkml-warmup-v1.xlsx");
+        if (!sample.isFile()) {
+            File partial = File.createTempFile("planetkml-warmup", ".xlsx");
+            SyntheticExportGenerator.generate(partial, 20, 1L);
+            if (!partial.renameTo(sample)) {
+                sample = partial;
+                sample.deleteOnExit();
+            }
+        }
+        new PlanetExportProcessor(ControllerRules.defaults()).process(sample, message -> { });
+    }
+
+    static void loadGuiClasses() {
+        ClassLoader loader = PoiWarmup.class.getClassLoader();
+        for (String className : GUI_CLASSES) {
+            try {
+                Class.forName(className, false, loader);
+            } catch (ClassNotFoundException e) {
+                // Look and feel specific; fine to skip
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.echostar;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helper class to hold both the ordered headers and the data from a sheet.
+ */
+class SheetData {
+    final List<String> headers;
+    final List<Map<String, String>> tableData;
+
+    SheetData(List<String> headers, List<Map<String, String>> tableData) {
+        this.headers = headers;
+        this.tableData = tableData;
+    }
+}
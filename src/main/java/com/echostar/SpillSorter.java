@@ -0,0 +1,315 @@
+package com.echostar;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * External sort for the out-of-core pipeline. Records are buffered in memory until the shared
+ * {@link Budget} is exceeded, then the buffer is sorted and written to disk as a run. Reading back
+ * merges the runs (and whatever is still buffered) in key order; records with equal keys come back
+ * in the order they were added, which the joins rely on to reproduce "last row wins" lookups.
+ */
+class SpillSorter implements Closeable {
+
+    /** Sort is by key then by sequence number, i.e. stable for records added in sequence order. */
+    static final Comparator<Record> ORDER = Comparator.comparing((Record r) -> r.key).thenComparingLong(r -> r.seq);
+
+    private static final int END_OF_RUN = -1;
+    private static final int NULL_STRING = -1;
+
+    /**
+     * One row in flight: a join key, the row's position in its source sheet and its values.
+     * Values may be null.
+     */
+    static class Record {
+        final String key;
+        final long seq;
+        final String[] values;
+
+        Record(String key, long seq, String[] values) {
+            this.key = key;
+            this.seq = seq;
+            this.values = values;
+        }
+
+        long estimatedBytes() {
+            long bytes = 64 + 16L * values.length + 2L * key.length();
+            for (String value : values) {
+                if (value != null) bytes += 40 + 2L * value.length();
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Heap allowance shared by every sorter in a pipeline run.
+     */
+    static class Budget {
+        final long limitBytes;
+        private long usedBytes;
+
+        Budget(long limitBytes) {
+            this.limitBytes = limitBytes;
+        }
+
+        synchronized boolean reserve(long bytes) {
+            usedBytes += bytes;
+            return usedBytes <= limitBytes;
+        }
+
+        synchronized void release(long bytes) {
+            usedBytes -= bytes;
+        }
+
+        synchronized long used() {
+            return usedBytes;
+        }
+    }
+
+    interface CloseableIterator<T> extends Iterator<T>, Closeable {
+    }
+
+    private final File tempDir;
+    private final String name;
+    private final Budget budget;
+    private List<Record> buffer = new ArrayList<>();
+    private long bufferedBytes;
+    private final List<File> runs = new ArrayList<>();
+    private long recordCount;
+
+    SpillSorter(File tempDir, String name, Budget budget) {
+        this.tempDir = tempDir;
+        this.name = name;
+        this.budget = budget;
+    }
+
+    void add(String key, long seq, String[] values) throws IOException {
+        Record record = new Record(key, seq, values);
+        long bytes = record.estimatedBytes();
+        buffer.add(record);
+        bufferedBytes += bytes;
+        recordCount++;
+        if (!budget.reserve(bytes)) {
+            spill();
+        }
+    }
+
+    long size() {
+        return recordCount;
+    }
+
+    int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Called once all input has been added. If this sorter's leftover buffer is holding more than
+     * half the budget it goes to disk too, so sealed sorters do not starve the ones still filling.
+     */
+    void seal() throws IOException {
+        if (!buffer.isEmpty() && (budget.used() > budget.limitBytes / 2)) {
+            spill();
+        }
+    }
+
+    private void spill() throws IOException {
+        if (buffer.isEmpty()) return;
+        buffer.sort(ORDER);
+        File run = File.createTempFile(name + "-run", ".bin", tempDir);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+            for (Record record : buffer) {
+                writeRecord(out, record);
+            }
+            out.writeInt(END_OF_RUN);
+        }
+        runs.add(run);
+        budget.release(bufferedBytes);
+        buffer = new ArrayList<>();
+        bufferedBytes = 0;
+    }
+
+    /**
+     * Iterates every added record in {@link #ORDER}. May be called once.
+     */
+    CloseableIterator<Record> sortedIterator() throws IOException {
+        buffer.sort(ORDER);
+        List<Iterator<Record>> sources = new ArrayList<>();
+        List<Closeable> closeables = new ArrayList<>();
+        for (File run : runs) {
+            RunReader reader = new RunReader(run);
+            sources.add(reader);
+            closeables.add(reader);
+        }
+        final List<Record> remaining = buffer;
+        final long remainingBytes = bufferedBytes;
+        buffer = new ArrayList<>();
+        bufferedBytes = 0;
+        sources.add(remaining.iterator());
+        closeables.add(() -> budget.release(remainingBytes));
+        return new MergingIterator(sources, closeables);
+    }
+
+    @Override
+    public void close() {
+        budget.release(bufferedBytes);
+        buffer = new ArrayList<>();
+        bufferedBytes = 0;
+        for (File run : runs) {
+            if (!run.delete()) run.deleteOnExit();
+        }
+        runs.clear();
+    }
+
+    static void writeRecord(DataOutputStream out, Record record) throws IOException {
+        out.writeInt(record.values.length);
+        writeString(out, record.key);
+        out.writeLong(record.seq);
+        for (String value : record.values) {
+            writeString(out, value);
+        }
+    }
+
+    /** Returns the next record, or null at the end of a run. */
+    static Record readRecord(DataInputStream in) throws IOException {
+        int fieldCount = in.readInt();
+        if (fieldCount == END_OF_RUN) return null;
+        String key = readString(in);
+        long seq = in.readLong();
+        String[] values = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            values[i] = readString(in);
+        }
+        return new Record(key, seq, values);
+    }
+
+    static void writeEnd(DataOutputStream out) throws IOException {
+        out.writeInt(END_OF_RUN);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_STRING) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sequential reader over one run file.
+     */
+    static class RunReader implements CloseableIterator<Record> {
+        private final DataInputStream in;
+        private Record next;
+
+        RunReader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            advance();
+        }
+
+        private void advance() throws IOException {
+            try {
+                next = readRecord(in);
+            } catch (EOFException e) {
+                next = null;
+            }
+            if (next == null) in.close();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Record next() {
+            if (next == null) throw new NoSuchElementException();
+            Record current = next;
+            try {
+                advance();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return current;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * K-way merge of already sorted sources.
+     */
+    private static class MergingIterator implements CloseableIterator<Record> {
+        private static class Head {
+            final Iterator<Record> source;
+            Record record;
+
+            Head(Iterator<Record> source) {
+                this.source = source;
+                this.record = source.next();
+            }
+        }
+
+        private final PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> ORDER.compare(a.record, b.record));
+        private final List<Closeable> closeables;
+
+        MergingIterator(List<Iterator<Record>> sources, List<Closeable> closeables) {
+            this.closeables = closeables;
+            for (Iterator<Record> source : sources) {
+                if (source.hasNext()) heads.add(new Head(source));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Record next() {
+            Head head = heads.poll();
+            if (head == null) throw new NoSuchElementException();
+            Record current = head.record;
+            if (head.source.hasNext()) {
+                head.record = head.source.next();
+                heads.add(head);
+            }
+            return current;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Closeable closeable : closeables) {
+                closeable.close();
+            }
+        }
+    }
+}
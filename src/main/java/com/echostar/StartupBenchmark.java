@@ -0,0 +1,145 @@
+package com.echostar;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cold-start tooling for the packaged distribution.
+ *
+ * {@code --train} is the workload recorded into the AppCDS archive at build time.
+ * {@code --bench-startup} measures time-to-first-parse in fresh JVMs with and without the background
+ * POI warm-up and the CDS archive. Each run waits a simulated "click delay" (the time a user spends
+ * in the confirm dialog and file chooser) before parsing, and reports both the time from JVM start
+ * and the time from the click until the export is parsed.
+ */
+class StartupBenchmark {
+
+    private static final String RESULT_PREFIX = "FIRST_PARSE ";
+
+    /**
+     * Exercises what a real session loads: Swing classes, POI and the SAX path, the merges and the
+     * KML writer, against a synthetic export.
+     */
+    static void train() throws Exception {
+        PoiWarmup.loadGuiClasses();
+        File sample = File.createTempFile("planetkml-train", ".xlsx");
+        File kml = File.createTempFile("planetkml-train", ".kml");
+        try {
+            SyntheticExportGenerator.generate(sample, 200, 42L);
+            HeadlessExport.exportKml(sample, kml, ControllerRules.defaults(), FanGeometry.defaults(), 0, message -> { });
+            System.out.println("CDS training run complete.");
+        } finally {
+            if (!sample.delete()) sample.deleteOnExit();
+            if (!kml.delete()) kml.deleteOnExit();
+        }
+    }
+
+    /**
+     * Child process body: optionally start the warm-up, wait for the simulated click, then parse.
+     */
+    static void firstParse(File excelFile, boolean warmup, long clickDelayMillis) throws Exception {
+        if (warmup) PoiWarmup.start();
+        Thread.sleep(clickDelayMillis);
+        long clickUptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        new PlanetExportProcessor(ControllerRules.defaults()).process(excelFile, message -> { });
+        long parsedUptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        System.out.println(RESULT_PREFIX + parsedUptime + " " + (parsedUptime - clickUptime));
+    }
+
+    /**
+     * Usage: {@code --bench-startup <export.xlsx> [--jsa planetkml.jsa] [--runs N] [--click-delay-ms D]}.
+     * Without an export a synthetic one is generated, and without {@code --jsa} the archive next to
+     * the jar is used. Run it through the launcher (or from the shaded jar by the same path) so the
+     * children's class path matches the one the archive was dumped with; the CDS runs use
+     * {@code -Xshare:on}, so a mismatch fails them instead of quietly timing a start without it.
+     */
+    static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        int firstOption = args.length > 1 && !args[1].startsWith("--") ? 2 : 1;
+        for (int i = firstOption; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        File excelFile;
+        if (firstOption == 2) {
+            excelFile = new File(args[1]);
+        } else {
+            excelFile = File.createTempFile("planetkml-bench", ".xlsx");
+            excelFile.deleteOnExit();
+            SyntheticExportGenerator.generate(excelFile, 500, 7L);
+        }
+        int runs = Integer.parseInt(options.getOrDefault("--runs", "5"));
+        String clickDelay = options.getOrDefault("--click-delay-ms", "1500");
+        String jsa = options.get("--jsa");
+        if (jsa == null) {
+            File besideJar = new File(new File(StartupBenchmark.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getParentFile(), "planetkml.jsa");
+            if (besideJar.isFile()) jsa = besideJar.getPath();
+        }
+
+        // name, warm-up flag for the child ("" for none), then JVM options
+        List<String[]> variants = new ArrayList<>();
+        variants.add(new String[]{"baseline", "", "-Xshare:auto"});
+        variants.add(new String[]{"warm-up", "--warmup", "-Xshare:auto"});
+        if (jsa != null) {
+            variants.add(new String[]{"cds", "", "-XX:SharedArchiveFile=" + jsa, "-Xshare:on"});
+            variants.add(new String[]{"cds+warm-up", "--warmup", "-XX:SharedArchiveFile=" + jsa, "-Xshare:on"});
+        }
+
+        System.out.println("Time to first parse of " + excelFile.getName() + ", median of " + runs + " runs, click after " + clickDelay + " ms");
+        System.out.println(String.format("%-14s %18s %18s", "variant", "JVM start (ms)", "after click (ms)"));
+        for (String[] variant : variants) {
+            List<Long> fromStart = new ArrayList<>();
+            List<Long> fromClick = new ArrayList<>();
+            for (int run = 0; run < runs; run++) {
+                long[] result = runChild(variant, excelFile, clickDelay);
+                fromStart.add(result[0]);
+                fromClick.add(result[1]);
+            }
+            System.out.println(String.format("%-14s %18d %18d", variant[0], median(fromStart), median(fromClick)));
+        }
+    }
+
+    private static long[] runChild(String[] variant, File excelFile, String clickDelay) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(Arrays.asList(variant).subList(2, variant.length));
+        command.add("-Djava.awt.headless=true");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(PlanetKMLCreator.class.getName());
+        command.add("--first-parse");
+        command.add(excelFile.getPath());
+        command.add(clickDelay);
+        if (!variant[1].isEmpty()) command.add(variant[1]);
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        long[] result = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    String[] parts = line.substring(RESULT_PREFIX.length()).split(" ");
+                    result = new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+                }
+            }
+        }
+        if (process.waitFor() != 0 || result == null) {
+            throw new IllegalStateException("Benchmark run failed: " + String.join(" ", command));
+        }
+        return result;
+    }
+
+    private static long median(List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+}
@@ -0,0 +1,245 @@
+package com.echostar;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Writes a Planet-shaped export with the five sheets and headers the loader reads, for testing and
+ * benchmarking where no real export can be shared. Sizes run from a handful of sites up to the
+ * xlsx limit of 1,048,575 data rows per sheet, about a million sectors; rows are streamed through
+ * SXSSF so generating a large file needs little heap.
+ *
+ * Besides the size, {@link Options} controls the number of extra columns, how many distinct values
+ * the free-text columns draw from, and the share of rows carrying the kinds of dirty data real
+ * exports have (sector IDs without an antenna digit, duplicate carriers, missing coordinates,
+ * unknown controllers, lower-case band names, sectors without a carrier).
+ */
+class SyntheticExportGenerator {
+
+    /** Above this many sectors the shared strings table would dominate the heap, so strings are written inline. */
+    static final long SHARED_STRINGS_MAX_SECTORS = 250_000;
+
+    /** Bump when a change here alters the generated contents, so cached golden inputs are regenerated. */
+    static final int CONTENT_VERSION = 3;
+
+    /** Antenna models cycled across sites, so fans come out with different beamwidths. */
+    private static final String[] ANTENNA_MODELS = {"FFVV-65B-R2", "FFVV-65B-R2", "FFHH-33B-R3", "NHH-90B-R2", "SBNHH-1D45B"};
+
+    /**
+     * What to generate. The same options and seed always produce the same workbook contents.
+     */
+    static class Options {
+        int siteCount = 100;
+        int antennasPerSite = 3;
+        List<String> bands = Arrays.asList("N71", "N29", "N66", "N70");
+        /** Extra "Custom: Extra_n" columns added to every sheet. */
+        int extraColumns;
+        /** Distinct values for cluster IDs, RU models and the extra columns. */
+        int cardinality = 50;
+        /** Share of sites, antennas and sectors given dirty data, 0 to 1. */
+        double dirtyRate;
+        long seed = 1L;
+        /** Shared strings like Planet's own exports, or inline strings; null picks by size. */
+        Boolean sharedStrings;
+
+        long sectorCount() {
+            return (long) siteCount * antennasPerSite * bands.size();
+        }
+
+        /** Sets the site count to the fewest sites giving at least {@code sectors} sectors. */
+        void targetSectors(long sectors) {
+            long perSite = (long) antennasPerSite * bands.size();
+            siteCount = (int) Math.max(1, (sectors + perSite - 1) / perSite);
+        }
+
+        boolean useSharedStrings() {
+            return sharedStrings != null ? sharedStrings : sectorCount() <= SHARED_STRINGS_MAX_SECTORS;
+        }
+
+        /**
+         * Reads {@code sites} or {@code sectors}, {@code antennas}, {@code bands} (comma separated),
+         * {@code extraColumns}, {@code cardinality}, {@code dirtyRate}, {@code seed} and
+         * {@code strings} (auto, shared or inline). Missing keys keep their defaults.
+         */
+        static Options fromProperties(Properties properties) {
+            Options options = new Options();
+            // Antenna IDs are single digits; the loader maps a sector to its antenna by its last character
+            options.antennasPerSite = Math.min(9, Math.max(1, Integer.parseInt(properties.getProperty("antennas", String.valueOf(options.antennasPerSite)))));
+            if (properties.containsKey("bands")) options.bands = Arrays.asList(properties.getProperty("bands").split("\\s*,\\s*"));
+            options.siteCount = Integer.parseInt(properties.getProperty("sites", String.valueOf(options.siteCount)));
+            if (properties.containsKey("sectors")) options.targetSectors(Long.parseLong(properties.getProperty("sectors")));
+            options.extraColumns = Integer.parseInt(properties.getProperty("extraColumns", String.valueOf(options.extraColumns)));
+            options.cardinality = Math.max(1, Integer.parseInt(properties.getProperty("cardinality", String.valueOf(options.cardinality))));
+            options.dirtyRate = Double.parseDouble(properties.getProperty("dirtyRate", String.valueOf(options.dirtyRate)));
+            options.seed = Long.parseLong(properties.getProperty("seed", String.valueOf(options.seed)));
+            String strings = properties.getProperty("strings", "auto");
+            options.sharedStrings = strings.equals("auto") ? null : Boolean.valueOf(strings.equals("shared"));
+            return options;
+        }
+
+        @Override
+        public String toString() {
+            return "sites=" + siteCount + " antennas=" + antennasPerSite + " bands=" + String.join(",", bands)
+                + " extraColumns=" + extraColumns + " cardinality=" + cardinality + " dirtyRate=" + dirtyRate
+                + " seed=" + seed + " strings=" + (useSharedStrings() ? "shared" : "inline");
+        }
+    }
+
+    /**
+     * Generates {@code siteCount} clean sites with three antennas and one sector per band on each.
+     */
+    static void generate(File file, int siteCount, long seed) throws IOException {
+        Options options = new Options();
+        options.siteCount = siteCount;
+        options.cardinality = 4;
+        options.seed = seed;
+        generate(file, options);
+    }
+
+    static void generate(File file, Options options) throws IOException {
+        // Sectors and carriers are one row each, plus the dirty duplicate carriers
+        long maxSheetRows = (long) Math.ceil(options.sectorCount() * (1 + options.dirtyRate)) + 1;
+        if (maxSheetRows > SpreadsheetVersion.EXCEL2007.getMaxRows()) {
+            throw new IllegalArgumentException(options.sectorCount() + " sectors would exceed the " + SpreadsheetVersion.EXCEL2007.getMaxRows() + " rows an xlsx sheet can hold");
+        }
+        Random random = new Random(options.seed);
+        String[] pool = new String[options.cardinality];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = "V" + Integer.toString(i, 36).toUpperCase();
+        }
+        SXSSFWorkbook workbook = new SXSSFWorkbook(null, 100, true, options.useSharedStrings());
+        try {
+            Sheet antennas = createSheet(workbook, "Antennas", options.extraColumns, "Site ID", "Antenna ID", "Latitude", "Longitude", "Antenna File", "Height (ft)", "Azimuth");
+            Sheet electrical = createSheet(workbook, "Antenna_Electrical_Parameters", options.extraColumns, "Site ID", "Antenna ID", "Electrical Controller", "Electrical Tilt");
+            Sheet sectors = createSheet(workbook, "Sectors", options.extraColumns, "Site ID", "Sector ID", "Band Name", "Custom: NR_Cell_Global_Id", "Custom: NR_Cell_Name", "Custom: RU_Model");
+            Sheet carriers = createSheet(workbook, "NR_Sector_Carriers", options.extraColumns, "Site ID", "Sector ID", "Physical Cell ID");
+            Sheet sites = createSheet(workbook, "Sites", options.extraColumns, "Site ID", "Longitude", "Latitude", "Site Name", "Custom: Cluster_ID", "Custom: gNodeB_Id", "Custom: gNodeB_Site_Number", "Custom: TAC");
+
+            // Sites are spread over a square whose area grows with the count, keeping density realistic
+            double spanDegrees = 0.5 * Math.sqrt(Math.max(1, options.siteCount / 500.0));
+            for (int s = 0; s < options.siteCount; s++) {
+                String siteId = String.format("NY%s%05d", "NYC", s);
+                double lat = 40.5 + random.nextDouble() * spanDegrees;
+                double lon = -74.2 + random.nextDouble() * spanDegrees;
+                Object siteLat = isDirty(random, options) ? "" : (Object) lat;
+                String siteName = options.dirtyRate > 0 && random.nextInt(10) == 0 ? awkwardSiteName(s, random.nextInt(5)) : "Site " + s;
+                addRow(sites, extras(random, pool, options), siteId, lon, siteLat, siteName, "CL" + pool[random.nextInt(pool.length)], String.valueOf(100000 + s), String.valueOf(s), String.valueOf(1000 + s % 20));
+                for (int antenna = 1; antenna <= options.antennasPerSite; antenna++) {
+                    String antennaId = String.valueOf(antenna);
+                    double azimuth = (antenna - 1) * (360.0 / options.antennasPerSite);
+                    Object antennaAzimuth = isDirty(random, options) ? "N/A" : (Object) azimuth;
+                    addRow(antennas, extras(random, pool, options), siteId, antennaId, lat, lon, ANTENNA_MODELS[(s + antenna) % ANTENNA_MODELS.length] + "_" + antenna + ".pafx", 80.0 + random.nextInt(60), antennaAzimuth);
+                    addRow(electrical, extras(random, pool, options), siteId, antennaId, isDirty(random, options) ? "Vendor RET " + antenna : "R1", String.valueOf(2 + random.nextInt(8)));
+                    addRow(electrical, extras(random, pool, options), siteId, antennaId, "Y1", String.valueOf(2 + random.nextInt(8)));
+                    for (String band : options.bands) {
+                        String sectorId = siteId + "_" + band + "_" + antennaId;
+                        String bandName = band;
+                        int dirtyKind = isDirty(random, options) ? random.nextInt(4) : -1;
+                        if (dirtyKind == 0) sectorId = siteId + "_" + band + "_X";
+                        if (dirtyKind == 1) bandName = band.toLowerCase();
+                        addRow(sectors, extras(random, pool, options), siteId, sectorId, bandName, "311480" + s + antenna, siteId + band + antenna, "RU" + pool[random.nextInt(pool.length)]);
+                        if (dirtyKind != 2) {
+                            addRow(carriers, extras(random, pool, options), siteId, sectorId, (double) random.nextInt(1008));
+                        }
+                        if (dirtyKind == 3) {
+                            addRow(carriers, extras(random, pool, options), siteId, sectorId, (double) random.nextInt(1008));
+                        }
+                    }
+                }
+            }
+            try (OutputStream out = new FileOutputStream(file)) {
+                workbook.write(out);
+            }
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    /**
+     * Site names as people type them into Planet: quotes, inch marks, commas and line breaks, which a
+     * CSV export writes quoted or, for a quote inside a name, as it is. They are ordinary rather than
+     * errors, so a tenth of sites get one whenever dirty data is on.
+     */
+    private static String awkwardSiteName(int site, int kind) {
+        switch (kind) {
+            case 0: return "Site " + site + ", \"Annex\"";
+            case 1: return "Site " + site + " 12\" mount";
+            case 2: return "Site " + site + "\nRooftop";
+            case 3: return "\"Site " + site + "\" tower";
+            default: return "Site " + site + " 6\" pole, east\nlevel 2";
+        }
+    }
+
+    private static boolean isDirty(Random random, Options options) {
+        return options.dirtyRate > 0 && random.nextDouble() < options.dirtyRate;
+    }
+
+    private static Object[] extras(Random random, String[] pool, Options options) {
+        Object[] values = new Object[options.extraColumns];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = pool[random.nextInt(pool.length)];
+        }
+        return values;
+    }
+
+    private static Sheet createSheet(SXSSFWorkbook workbook, String name, int extraColumns, String... headers) {
+        Sheet sheet = workbook.createSheet(name);
+        Object[] extraHeaders = new Object[extraColumns];
+        for (int i = 0; i < extraColumns; i++) {
+            extraHeaders[i] = "Custom: Extra_" + (i + 1);
+        }
+        addRow(sheet, extraHeaders, (Object[]) headers);
+        return sheet;
+    }
+
+    private static void addRow(Sheet sheet, Object[] extras, Object... values) {
+        Row row = sheet.createRow(sheet.getLastRowNum() + 1);
+        for (int i = 0; i < values.length + extras.length; i++) {
+            Object value = i < values.length ? values[i] : extras[i - values.length];
+            if (value instanceof Number) {
+                row.createCell(i).setCellValue(((Number) value).doubleValue());
+            } else {
+                row.createCell(i).setCellValue((String) value);
+            }
+        }
+    }
+
+    /**
+     * Usage: {@code --generate <out.xlsx> [--sites N | --sectors N] [--antennas A] [--bands N71,N29]
+     * [--extra-columns C] [--cardinality K] [--dirty-rate R] [--seed S] [--strings auto|shared|inline]}.
+     */
+    static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: --generate <out.xlsx> [--sites N | --sectors N] [--antennas A] [--bands N71,N29] [--extra-columns C] [--cardinality K] [--dirty-rate R] [--seed S] [--strings auto|shared|inline]");
+            System.exit(2);
+        }
+        Properties properties = new Properties();
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            properties.setProperty(camelCase(args[i].substring(2)), args[i + 1]);
+        }
+        Options options = Options.fromProperties(properties);
+        long start = System.currentTimeMillis();
+        generate(new File(args[1]), options);
+        System.out.println("Wrote " + args[1] + ": " + options.sectorCount() + " sectors (" + options + ") in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private static String camelCase(String option) {
+        StringBuilder name = new StringBuilder();
+        for (String part : option.split("-")) {
+            name.append(name.length() == 0 ? part : Character.toUpperCase(part.charAt(0)) + part.substring(1));
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,269 @@
+package com.echostar;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes merged tables (Sites, Sectors, PCI Conflicts) back out as XLSX or CSV, straight from the
+ * row maps without building a table model.
+ *
+ * XLSX goes through SXSSF with a small row window, so memory stays flat however many rows there
+ * are; measurement columns are written as numbers when the whole value is a plain decimal,
+ * everything else as text. A table longer than an
+ * xlsx sheet continues on "Name (2)", "Name (3)" and so on. CSV goes through one buffered writer
+ * and only allocates when a field needs quoting.
+ */
+class TableExporter {
+
+    /** Rows SXSSF keeps in memory per sheet before flushing them to its temp file. */
+    private static final int ROW_WINDOW = 100;
+
+    /** Columns written as numbers in XLSX when the value parses; IDs and names stay text. */
+    static final Set<String> NUMERIC_HEADERS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        "Latitude", "Longitude", "Azimuth", "Height (ft)", "Electrical Tilt", "Physical Cell ID",
+        "PCI A", "PCI B", "Distance (m)")));
+
+    /**
+     * Writes each table to its own sheet, in map order. The file is written under a temporary name
+     * and renamed when complete.
+     */
+    static void writeXlsx(Map<String, SheetData> tables, File file) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        // Temp files stay uncompressed: gzipping them and then deflating the zip doubled the export time
+        SXSSFWorkbook workbook = new SXSSFWorkbook(null, ROW_WINDOW, false, false);
+        try {
+            CellStyle headerStyle = workbook.createCellStyle();
+            Font bold = workbook.createFont();
+            bold.setBold(true);
+            headerStyle.setFont(bold);
+            int maxDataRows = SpreadsheetVersion.EXCEL2007.getMaxRows() - 1;
+
+            for (Map.Entry<String, SheetData> table : tables.entrySet()) {
+                List<String> headers = table.getValue().headers;
+                boolean[] numeric = new boolean[headers.size()];
+                for (int c = 0; c < numeric.length; c++) {
+                    numeric[c] = NUMERIC_HEADERS.contains(headers.get(c));
+                }
+                Sheet sheet = null;
+                int part = 0;
+                int rowIndex = 0;
+                for (Map<String, String> rowData : table.getValue().tableData) {
+                    if (sheet == null || rowIndex > maxDataRows) {
+                        part++;
+                        sheet = workbook.createSheet(part == 1 ? table.getKey() : table.getKey() + " (" + part + ")");
+                        writeHeader(sheet, headers, headerStyle);
+                        rowIndex = 1;
+                    }
+                    Row row = sheet.createRow(rowIndex++);
+                    for (int c = 0; c < numeric.length; c++) {
+                        String value = rowData.get(headers.get(c));
+                        if (value == null || value.isEmpty()) continue;
+                        if (numeric[c] && isDecimal(value)) {
+                            double number = Double.parseDouble(value);
+                            // "1e999" is a decimal but not a finite double
+                            if (!Double.isInfinite(number)) {
+                                row.createCell(c).setCellValue(number);
+                                continue;
+                            }
+                        }
+                        row.createCell(c).setCellValue(value);
+                    }
+                }
+                if (sheet == null) {
+                    writeHeader(workbook.createSheet(table.getKey()), headers, headerStyle);
+                }
+            }
+            try (OutputStream out = Files.newOutputStream(tempFile.toPath())) {
+                workbook.write(out);
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+            // Only still there if writing failed
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    private static void writeHeader(Sheet sheet, List<String> headers, CellStyle headerStyle) {
+        Row header = sheet.createRow(0);
+        for (int c = 0; c < headers.size(); c++) {
+            header.createCell(c).setCellValue(headers.get(c));
+            header.getCell(c).setCellStyle(headerStyle);
+        }
+        sheet.createFreezePane(0, 1);
+    }
+
+    /**
+     * True for a plain decimal: optional sign, digits with an optional fraction, optional exponent.
+     * Unlike Double.parseDouble this rejects "NaN", "Infinity", hex and the "12f" / "1d" suffixes,
+     * so such cells stay text instead of being silently converted.
+     */
+    static boolean isDecimal(String value) {
+        int length = value.length();
+        int i = 0;
+        if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) i++;
+        int digits = 0;
+        while (i < length && isDigit(value.charAt(i))) { i++; digits++; }
+        if (i < length && value.charAt(i) == '.') {
+            i++;
+            while (i < length && isDigit(value.charAt(i))) { i++; digits++; }
+        }
+        if (digits == 0) return false;
+        if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) i++;
+            int exponentDigits = 0;
+            while (i < length && isDigit(value.charAt(i))) { i++; exponentDigits++; }
+            if (exponentDigits == 0) return false;
+        }
+        return i == length;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Writes {@code table} as RFC 4180 CSV: comma separated, fields with commas, quotes or line
+     * breaks quoted, one record per line.
+     */
+    static void writeCsv(SheetData table, File file) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(tempFile.toPath()), StandardCharsets.UTF_8), 1 << 16)) {
+                writeCsv(table.headers, table.tableData, writer);
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    static void writeCsv(List<String> headers, Iterable<Map<String, String>> rows, Writer writer) throws IOException {
+        writeCsvHeader(writer, headers);
+        String[] keys = headers.toArray(new String[0]);
+        for (Map<String, String> row : rows) {
+            writeCsvRow(writer, keys, row);
+        }
+    }
+
+    static void writeCsvHeader(Writer writer, List<String> headers) throws IOException {
+        for (int c = 0; c < headers.size(); c++) {
+            if (c > 0) writer.write(',');
+            writeCsvField(writer, headers.get(c));
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Writes one record with {@code row}'s values for {@code keys}, in that order; missing values are blank.
+     */
+    static void writeCsvRow(Writer writer, String[] keys, Map<String, String> row) throws IOException {
+        for (int c = 0; c < keys.length; c++) {
+            if (c > 0) writer.write(',');
+            String value = row.get(keys[c]);
+            if (value != null) writeCsvField(writer, value);
+        }
+        writer.write('\n');
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        int length = value.length();
+        boolean needsQuotes = false;
+        for (int i = 0; i < length && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) == '"') {
+                // Write up to and including the quote, then double it
+                writer.write(value, start, i - start + 1);
+                writer.write('"');
+                start = i + 1;
+            }
+        }
+        writer.write(value, start, length - start);
+        writer.write('"');
+    }
+
+    /**
+     * The CSV files for {@code tables} next to {@code csvFile}: "market.csv" gives "market_Sites.csv",
+     * "market_Sectors.csv" and so on.
+     */
+    static Map<String, File> csvFilesFor(File csvFile, Iterable<String> tableNames) {
+        String name = csvFile.getName();
+        String base = name.toLowerCase().endsWith(".csv") ? name.substring(0, name.length() - 4) : name;
+        Map<String, File> files = new LinkedHashMap<>();
+        for (String tableName : tableNames) {
+            files.put(tableName, new File(csvFile.getAbsoluteFile().getParentFile(), base + "_" + tableName.replaceAll("[^A-Za-z0-9]+", "_") + ".csv"));
+        }
+        return files;
+    }
+
+    /**
+     * Writes {@code tables} to {@code file}: one workbook for .xlsx, one CSV per table otherwise.
+     */
+    static void export(Map<String, SheetData> tables, File file) throws IOException {
+        if (file.getName().toLowerCase().endsWith(".xlsx")) {
+            writeXlsx(tables, file);
+        } else {
+            Map<String, File> csvFiles = csvFilesFor(file, tables.keySet());
+            for (Map.Entry<String, SheetData> table : tables.entrySet()) {
+                writeCsv(table.getValue(), csvFiles.get(table.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Usage: {@code --export-tables <export.xlsx> <out.xlsx|out.csv>}. Loads and merges the export
+     * with the shared controller rules and writes the Sites and Sectors tables.
+     */
+    static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: --export-tables <export.xlsx> <out.xlsx|out.csv>");
+            System.exit(2);
+        }
+        long start = System.currentTimeMillis();
+        PlanetExportProcessor.Result result = new PlanetExportProcessor(ControllerRules.loadDefault()).process(new File(args[1]), System.out::println);
+        if (result.siteData == null || result.sectorsData == null) {
+            System.err.println("Export is missing one of the required sheets.");
+            System.exit(1);
+        }
+        long exportStart = System.currentTimeMillis();
+        Map<String, SheetData> tables = new LinkedHashMap<>();
+        tables.put("Sites", result.siteData);
+        tables.put("Sectors", result.sectorsData);
+        export(tables, new File(args[2]));
+        long now = System.currentTimeMillis();
+        System.out.println("Wrote " + result.siteData.tableData.size() + " sites and " + result.sectorsData.tableData.size() + " sectors to " + args[2]
+            + ": parse " + (exportStart - start) + " ms, export " + (now - exportStart) + " ms");
+    }
+}
@@ -0,0 +1,448 @@
+package com.echostar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Headless service mode: watches a drop directory for new Planet exports and regenerates the KML
+ * for each one without anyone opening the GUI.
+ *
+ * New or modified {@code .xlsx} files are debounced until their size and timestamp stop changing,
+ * then queued. A dispatcher admits queued jobs against a heap budget using each file's estimated
+ * in-memory cost, so a burst of large exports runs a few at a time instead of all at once. Each
+ * job writes {@code <name>.kml}, {@code <name>.kmz} and {@code <name>.report.txt} to the output
+ * directory, and {@code service-status.txt} there always shows the queue depth and recent timings.
+ * An export too big for the budget on its own runs alone and through {@link OutOfCorePipeline}.
+ * A file counts as processed only once its outputs are written; a failed one goes back through the
+ * debounce a few times, and an Error such as OutOfMemoryError stops the service.
+ */
+class WatchFolderService {
+
+    /** Rough ratio of in-heap size of the merged tables to the compressed .xlsx size. */
+    static final int DEFAULT_HEAP_EXPANSION_FACTOR = 30;
+
+    private static final int RECENT_JOBS_KEPT = 50;
+
+    /** Runs a failing export gets (e.g. one still being copied over a slow share) before it is left until it changes. */
+    static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * Timings and counts for one processed export.
+     */
+    static class JobReport {
+        final Path input;
+        final String fileName;
+        final long fileBytes;
+        final long estimatedHeapBytes;
+        /** Timestamp of the version of the file this job reads. */
+        long lastModified;
+        long queuedAt;
+        long startedAt;
+        long parseMillis;
+        long kmlMillis;
+        long totalMillis;
+        int siteCount;
+        long sectorCount;
+        boolean outOfCore;
+        String error;
+
+        JobReport(Path input, long fileBytes, long estimatedHeapBytes) {
+            this.input = input;
+            this.fileName = input.getFileName().toString();
+            this.fileBytes = fileBytes;
+            this.estimatedHeapBytes = estimatedHeapBytes;
+        }
+
+        long waitMillis() {
+            return startedAt - queuedAt;
+        }
+    }
+
+    private static class PendingFile {
+        long size = -1;
+        long lastModified = -1;
+        long stableSince;
+    }
+
+    private final Path inputDir;
+    private final Path outputDir;
+    private final int maxConcurrentJobs;
+    private final long heapBudgetBytes;
+    private final long debounceMillis;
+    private final int heapExpansionFactor;
+
+    private final Map<Path, PendingFile> pending = new ConcurrentHashMap<>();
+    private final Map<Path, Long> processedVersions = new ConcurrentHashMap<>();
+    private final Map<Path, Integer> failedAttempts = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<JobReport> queue = new LinkedBlockingQueue<>();
+    private final Set<Path> queuedPaths = ConcurrentHashMap.newKeySet();
+    private final Deque<JobReport> recentJobs = new ArrayDeque<>();
+    private final AtomicInteger runningJobs = new AtomicInteger();
+    private final Semaphore heapPermits;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService debouncer = Executors.newSingleThreadScheduledExecutor(daemonThreads("planetkml-debounce"));
+    /** Set when a job hit an Error (typically OutOfMemoryError); the service stops and rethrows it. */
+    private volatile Error fatalError;
+    private volatile Thread serviceThread;
+
+    WatchFolderService(Path inputDir, Path outputDir, int maxConcurrentJobs, long heapBudgetBytes, long debounceMillis, int heapExpansionFactor) {
+        this.inputDir = inputDir;
+        this.outputDir = outputDir;
+        this.maxConcurrentJobs = maxConcurrentJobs;
+        this.heapBudgetBytes = heapBudgetBytes;
+        this.debounceMillis = debounceMillis;
+        this.heapExpansionFactor = heapExpansionFactor;
+        // One permit per megabyte of budget keeps the count well inside int range
+        this.heapPermits = new Semaphore(toPermits(heapBudgetBytes), true);
+        this.workers = Executors.newFixedThreadPool(maxConcurrentJobs, daemonThreads("planetkml-job"));
+    }
+
+    /** Number of debounced files waiting for admission. */
+    int getQueueDepth() {
+        return queue.size();
+    }
+
+    /** Number of files seen but still being written. */
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    int getRunningJobs() {
+        return runningJobs.get();
+    }
+
+    List<JobReport> getRecentJobs() {
+        synchronized (recentJobs) {
+            return new ArrayList<>(recentJobs);
+        }
+    }
+
+    /**
+     * Runs the service until the thread is interrupted or a job fails with an Error, which is then
+     * rethrown. Files already in the input directory are treated as new.
+     */
+    void run() throws IOException, InterruptedException {
+        serviceThread = Thread.currentThread();
+        Files.createDirectories(outputDir);
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            inputDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            try (DirectoryStream<Path> existing = Files.newDirectoryStream(inputDir)) {
+                for (Path path : existing) {
+                    noteChanged(path);
+                }
+            }
+            debouncer.scheduleWithFixedDelay(this::promoteStableFiles, debounceMillis / 2, Math.max(50, debounceMillis / 2), TimeUnit.MILLISECONDS);
+            Thread dispatcher = new Thread(this::dispatchLoop, "planetkml-dispatch");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+            writeStatus();
+            log("Watching " + inputDir + " -> " + outputDir + " (" + maxConcurrentJobs + " jobs, " + (heapBudgetBytes >> 20) + " MB heap budget)");
+
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = watchService.take();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // Events were dropped; rescan so nothing is missed
+                            try (DirectoryStream<Path> all = Files.newDirectoryStream(inputDir)) {
+                                for (Path path : all) noteChanged(path);
+                            }
+                            continue;
+                        }
+                        noteChanged(inputDir.resolve((Path) event.context()));
+                    }
+                    if (!key.reset()) {
+                        log("Input directory is no longer accessible: " + inputDir);
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (fatalError != null) throw fatalError;
+                throw e;
+            } finally {
+                dispatcher.interrupt();
+                debouncer.shutdownNow();
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    private void noteChanged(Path path) {
+        String name = path.getFileName().toString();
+        // Skip Excel's "~$" lock files and anything that is not an export
+        if (!name.toLowerCase().endsWith(".xlsx") || name.startsWith("~$")) return;
+        pending.computeIfAbsent(path, p -> new PendingFile()).stableSince = System.currentTimeMillis();
+    }
+
+    /**
+     * Moves pending files whose size and timestamp have not changed for the debounce period, and
+     * that can be opened for reading, onto the job queue.
+     */
+    private void promoteStableFiles() {
+        long now = System.currentTimeMillis();
+        boolean changed = false;
+        for (Iterator<Map.Entry<Path, PendingFile>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, PendingFile> entry = it.next();
+            Path path = entry.getKey();
+            PendingFile state = entry.getValue();
+            File file = path.toFile();
+            if (!file.isFile()) {
+                it.remove();
+                continue;
+            }
+            long size = file.length();
+            long lastModified = file.lastModified();
+            if (size != state.size || lastModified != state.lastModified) {
+                state.size = size;
+                state.lastModified = lastModified;
+                state.stableSince = now;
+                continue;
+            }
+            if (now - state.stableSince < debounceMillis || size == 0 || !isReadable(file)) continue;
+
+            it.remove();
+            Long processed = processedVersions.get(path);
+            if (processed != null && processed == lastModified) continue;
+            if (!queuedPaths.add(path)) continue;
+
+            long estimate = Math.min(heapBudgetBytes, size * heapExpansionFactor);
+            JobReport job = new JobReport(path, size, estimate);
+            job.lastModified = lastModified;
+            job.queuedAt = now;
+            queue.add(job);
+            changed = true;
+            log("Queued " + job.fileName + " (" + (size >> 10) + " KB, est. " + (estimate >> 20) + " MB heap), queue depth " + queue.size());
+        }
+        if (changed) writeStatus();
+    }
+
+    private static boolean isReadable(File file) {
+        // On Windows a file still being copied is locked by the writer and cannot be opened
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.length() >= 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Takes jobs in arrival order and only hands one to the worker pool once enough of the heap
+     * budget is free for its estimated cost. The fair semaphore stops a large job at the head of the
+     * queue from being starved by smaller ones behind it.
+     */
+    private void dispatchLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                JobReport job = queue.take();
+                int permits = Math.max(1, Math.min(toPermits(job.estimatedHeapBytes), toPermits(heapBudgetBytes)));
+                heapPermits.acquire(permits);
+                runningJobs.incrementAndGet();
+                workers.execute(() -> {
+                    try {
+                        runJob(job);
+                    } finally {
+                        runningJobs.decrementAndGet();
+                        heapPermits.release(permits);
+                        writeStatus();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runJob(JobReport job) {
+        queuedPaths.remove(job.input);
+        String baseName = job.fileName.substring(0, job.fileName.length() - ".xlsx".length());
+        job.startedAt = System.currentTimeMillis();
+        writeStatus();
+        log("Started " + job.fileName + " after waiting " + job.waitMillis() + " ms");
+        try {
+            // A job whose estimate did not fit the budget was admitted with the whole budget; run it
+            // out-of-core with half of it so the rest covers POI and the Sites table
+            long spillBudget = job.fileBytes * heapExpansionFactor > heapBudgetBytes ? heapBudgetBytes / 2 : 0;
+            Path kmlFile = outputDir.resolve(baseName + ".kml");
+            HeadlessExport.Stats stats = HeadlessExport.exportKml(job.input.toFile(), kmlFile.toFile(),
+                ControllerRules.loadDefault(), FanGeometry.loadDefault(), spillBudget, message -> { });
+            job.parseMillis = stats.parseMillis;
+            job.siteCount = stats.siteCount;
+            job.sectorCount = stats.sectorCount;
+            job.outOfCore = stats.outOfCore;
+
+            long kmzStart = System.currentTimeMillis();
+            writeKmz(kmlFile, outputDir.resolve(baseName + ".kmz"));
+            job.kmlMillis = stats.kmlMillis + (System.currentTimeMillis() - kmzStart);
+            processedVersions.put(job.input, job.lastModified);
+            failedAttempts.remove(job.input);
+        } catch (Exception e) {
+            job.error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            System.err.println("Failed to process " + job.fileName + ": " + job.error);
+            retryLater(job);
+        } catch (Error e) {
+            // The heap budget exists to prevent this; carrying on would only fail the next jobs too
+            job.error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            System.err.println("Stopping the service: " + job.fileName + " failed with " + job.error);
+            finishJob(job, baseName);
+            fatalError = e;
+            Thread thread = serviceThread;
+            if (thread != null) thread.interrupt();
+            throw e;
+        }
+        finishJob(job, baseName);
+    }
+
+    private void finishJob(JobReport job, String baseName) {
+        job.totalMillis = System.currentTimeMillis() - job.startedAt;
+        synchronized (recentJobs) {
+            recentJobs.addFirst(job);
+            while (recentJobs.size() > RECENT_JOBS_KEPT) recentJobs.removeLast();
+        }
+        writeReport(job, outputDir.resolve(baseName + ".report.txt"));
+        log((job.error == null ? "Finished " : "Failed ") + job.fileName + " in " + job.totalMillis + " ms (parse " + job.parseMillis + " ms, kml " + job.kmlMillis + " ms)");
+    }
+
+    /**
+     * Puts a failed file back through the debounce, up to {@link #MAX_ATTEMPTS} runs per version;
+     * after that it waits until the file changes.
+     */
+    private void retryLater(JobReport job) {
+        int attempts = failedAttempts.merge(job.input, 1, Integer::sum);
+        if (attempts < MAX_ATTEMPTS) {
+            noteChanged(job.input);
+        } else {
+            failedAttempts.remove(job.input);
+            processedVersions.put(job.input, job.lastModified);
+            System.err.println("Giving up on " + job.fileName + " after " + attempts + " attempts; it is retried when the file changes.");
+        }
+    }
+
+    private static void writeKmz(Path kmlFile, Path kmzFile) throws IOException {
+        Path kmzTemp = kmzFile.resolveSibling(kmzFile.getFileName() + ".tmp");
+        try {
+            try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(kmzTemp))) {
+                // Google Earth opens the first .kml entry; doc.kml is the conventional name
+                zip.putNextEntry(new ZipEntry("doc.kml"));
+                Files.copy(kmlFile, zip);
+                zip.closeEntry();
+            }
+            Files.move(kmzTemp, kmzFile, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(kmzTemp);
+        }
+    }
+
+    private void writeReport(JobReport job, Path reportFile) {
+        List<String> lines = new ArrayList<>();
+        lines.add("File: " + job.fileName);
+        lines.add("Status: " + (job.error == null ? "OK" : "FAILED - " + job.error));
+        lines.add("Finished: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
+        lines.add("File size (bytes): " + job.fileBytes);
+        lines.add("Estimated heap (bytes): " + job.estimatedHeapBytes);
+        lines.add("Queue wait (ms): " + job.waitMillis());
+        lines.add("Parse and merge (ms): " + job.parseMillis);
+        lines.add("KML/KMZ (ms): " + job.kmlMillis);
+        lines.add("Total (ms): " + job.totalMillis);
+        lines.add("Sites: " + job.siteCount);
+        lines.add("Sectors: " + job.sectorCount);
+        lines.add("Out-of-core: " + job.outOfCore);
+        try {
+            Files.write(reportFile, lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Could not write report " + reportFile + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized void writeStatus() {
+        List<String> lines = new ArrayList<>();
+        lines.add("Updated: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
+        lines.add("Queue depth: " + getQueueDepth());
+        lines.add("Pending (still being written): " + getPendingCount());
+        lines.add("Running jobs: " + getRunningJobs() + " / " + maxConcurrentJobs);
+        lines.add("Heap budget free (MB): " + heapPermits.availablePermits() + " / " + toPermits(heapBudgetBytes));
+        lines.add("");
+        lines.add("Recent jobs (file, wait ms, parse ms, kml ms, total ms, sectors, status):");
+        for (JobReport job : getRecentJobs()) {
+            lines.add(job.fileName + "\t" + job.waitMillis() + "\t" + job.parseMillis + "\t" + job.kmlMillis + "\t" + job.totalMillis + "\t" + job.sectorCount + "\t" + (job.error == null ? "OK" : job.error));
+        }
+        try {
+            Path statusTemp = outputDir.resolve("service-status.txt.tmp");
+            Files.write(statusTemp, lines, StandardCharsets.UTF_8);
+            Files.move(statusTemp, outputDir.resolve("service-status.txt"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Could not write service status: " + e.getMessage());
+        }
+    }
+
+    private static int toPermits(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes >> 20));
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static void log(String message) {
+        System.out.println("[" + new SimpleDateFormat("HH:mm:ss").format(new Date()) + "] " + message);
+    }
+
+    /**
+     * Usage: {@code --watch <inputDir> <outputDir> [--jobs N] [--heap-budget-mb M] [--debounce-ms D]}.
+     * The heap budget defaults to 60% of the JVM's max heap.
+     */
+    static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: --watch <inputDir> <outputDir> [--jobs N] [--heap-budget-mb M] [--debounce-ms D]");
+            System.exit(2);
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 3; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        int jobs = Integer.parseInt(options.getOrDefault("--jobs", String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() / 2))));
+        long defaultBudgetMb = (long) (Runtime.getRuntime().maxMemory() * 0.6) >> 20;
+        long budgetBytes = Long.parseLong(options.getOrDefault("--heap-budget-mb", String.valueOf(defaultBudgetMb))) << 20;
+        long debounce = Long.parseLong(options.getOrDefault("--debounce-ms", "2000"));
+        int factor = Integer.getInteger("planetkml.heapFactor", DEFAULT_HEAP_EXPANSION_FACTOR);
+
+        new WatchFolderService(Paths.get(args[1]), Paths.get(args[2]), jobs, budgetBytes, debounce, factor).run();
+    }
+}
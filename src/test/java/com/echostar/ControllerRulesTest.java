@@ -0,0 +1,108 @@
+package com.echostar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ControllerRulesTest {
+
+    private static final String LB = "LB Electrical Tilt";
+    private static final String MB = "MB Electrical Tilt";
+
+    private static ControllerRules rules(String... typePatternBand) {
+        List<ControllerRules.Rule> rules = new ArrayList<>();
+        for (int i = 0; i < typePatternBand.length; i += 3) {
+            rules.add(new ControllerRules.Rule(ControllerRules.Type.valueOf(typePatternBand[i]), typePatternBand[i + 1], typePatternBand[i + 2]));
+        }
+        return ControllerRules.compile(rules);
+    }
+
+    @Test
+    void exactBeatsPrefix() {
+        ControllerRules rules = rules("PREFIX", "R", MB, "EXACT", "R1", LB);
+        assertEquals(LB, rules.bandFor("R1"));
+        assertEquals(MB, rules.bandFor("R9"));
+        assertEquals("", rules.bandFor("Y1"));
+        assertEquals("", rules.bandFor(""));
+        assertEquals("", rules.bandFor(null));
+    }
+
+    @Test
+    void laterExactRuleReplacesEarlier() {
+        assertEquals(LB, rules("EXACT", "Port 3-4", MB, "EXACT", "Port 3-4", LB).bandFor("Port 3-4"));
+        assertEquals(LB, ControllerRules.defaults().bandFor("Port 3-4"));
+    }
+
+    @Test
+    void longestPrefixWins() {
+        ControllerRules rules = rules("PREFIX", "Port", LB, "PREFIX", "Port 5", MB, "PREFIX", "Portal", "");
+        assertEquals(MB, rules.bandFor("Port 5-8"));
+        assertEquals(LB, rules.bandFor("Port 1-2"));
+        // A longer prefix that is only partly matched does not count
+        assertEquals(LB, rules.bandFor("Porta"));
+        assertEquals("", rules.bandFor("Pos"));
+    }
+
+    @Test
+    void regexAndRangeRulesApplyInListedOrder() {
+        ControllerRules rules = rules("REGEX", "Ctl.*", LB, "RANGE", "1400-2700", MB);
+        assertEquals(LB, rules.bandFor("Ctl_1695-2690"));
+        assertEquals(MB, rules.bandFor("Vendor_1695-2690_56"));
+        // Regex rules match the whole name
+        assertEquals("", rules.bandFor("xCtl"));
+    }
+
+    @Test
+    void rangeNeedsTheWholeSpanInside() {
+        ControllerRules rules = rules("RANGE", "600-1000", LB);
+        assertEquals(LB, rules.bandFor("Controller_617-894_12"));
+        assertEquals(LB, rules.bandFor("Controller 600 - 1000"));
+        assertEquals("", rules.bandFor("Controller_617-1200"));
+        assertEquals("", rules.bandFor("Controller_894-617"));
+        assertEquals("", rules.bandFor("Controller_12"));
+    }
+
+    @Test
+    void rangeIsParsedWithWhitespaceAndRejectedWhenMalformed() {
+        assertEquals(LB, rules("RANGE", " 600 - 1000 ", LB).bandFor("C_700-800"));
+        for (String bad : Arrays.asList("1000-600", "600", "a-b", "600-1000-2000")) {
+            assertThrows(IllegalArgumentException.class, () -> rules("RANGE", bad, LB), bad);
+        }
+        assertThrows(IllegalArgumentException.class, () -> rules("REGEX", "Ctl(", LB));
+    }
+
+    @Test
+    void defaultsHaveNoFrequencyRanges() {
+        assertEquals("", ControllerRules.defaults().bandFor("Controller_700-800_9"));
+        assertEquals(LB, ControllerRules.defaults().bandFor("Controller_617-894_12"));
+    }
+
+    @Test
+    void lookupsStayCorrectPastTheCacheSize() {
+        ControllerRules rules = rules("RANGE", "600-1000", LB, "REGEX", "Y.*", MB);
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(LB, rules.bandFor("C" + i + "_700-800"));
+            assertEquals(MB, rules.bandFor("Y" + i));
+        }
+    }
+
+    @Test
+    void saveAndLoadRoundTrip(@TempDir File dir) throws Exception {
+        ControllerRules rules = rules("EXACT", "R1", LB, "PREFIX", "Port", MB, "REGEX", "Ctl.*", LB, "RANGE", "600-1000", LB);
+        File file = new File(dir, "rules.tsv");
+        rules.save(file);
+        ControllerRules loaded = ControllerRules.load(file);
+        assertEquals(rules.toRows().length, loaded.toRows().length);
+        for (int i = 0; i < rules.toRows().length; i++) {
+            assertArrayEquals(rules.toRows()[i], loaded.toRows()[i]);
+        }
+    }
+}
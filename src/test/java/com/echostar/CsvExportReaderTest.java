@@ -0,0 +1,79 @@
+package com.echostar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CsvExportReaderTest {
+
+    // Stray quotes in unquoted names, then quoted fields with commas, escapes and line breaks
+    private static final String PLANET_CSV = "\uFEFF\"Site ID\",Site Name,Height (ft)\r\n"
+        + "S1,Water tower 12\" mount,80\r\n"
+        + "S2,\"Roof, north\nlevel 2\",90\r\n"
+        + "S3,\"\"\"Old\"\" mill\",100\r\n"
+        + "S4,6\" pole,110\r\n"
+        + "\r\n"
+        + "S5,\"a\nb\nc, d\",120\r\n"
+        + "S6,\"closed\" then text,130\r\n"
+        + "S7,plain\r\n";
+
+    private static List<Map<String, String>> parse(File file, int chunkBytes) throws Exception {
+        List<Map<String, String>> rows = new ArrayList<>();
+        List<String> headers = CsvExportReader.streamFile(file, chunkBytes, rows::add);
+        assertEquals(Arrays.asList("Site ID", "Site Name", "Height (ft)"), headers);
+        return rows;
+    }
+
+    @Test
+    void parsesPlanetQuoting(@TempDir File dir) throws Exception {
+        File file = new File(dir, "Sites.csv");
+        Files.write(file.toPath(), PLANET_CSV.getBytes(StandardCharsets.UTF_8));
+        List<Map<String, String>> rows = parse(file, CsvExportReader.CHUNK_BYTES);
+        assertEquals(7, rows.size());
+        assertEquals("Water tower 12\" mount", rows.get(0).get("Site Name"));
+        assertEquals("Roof, north\nlevel 2", rows.get(1).get("Site Name"));
+        assertEquals("\"Old\" mill", rows.get(2).get("Site Name"));
+        assertEquals("6\" pole", rows.get(3).get("Site Name"));
+        assertEquals("110", rows.get(3).get("Height (ft)"));
+        assertEquals("a\nb\nc, d", rows.get(4).get("Site Name"));
+        assertEquals("closed", rows.get(5).get("Site Name"));
+        assertEquals("", rows.get(6).get("Height (ft)"));
+    }
+
+    @Test
+    void everyChunkSizeGivesTheSameRows(@TempDir File dir) throws Exception {
+        // Repeated so chunks of every size start inside quoted fields, after stray quotes and on escapes
+        StringBuilder csv = new StringBuilder(PLANET_CSV);
+        String records = PLANET_CSV.substring(PLANET_CSV.indexOf('\n') + 1);
+        for (int i = 0; i < 20; i++) csv.append(records);
+        File file = new File(dir, "Sites.csv");
+        Files.write(file.toPath(), csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        List<Map<String, String>> expected = parse(file, Integer.MAX_VALUE);
+        assertEquals(7 * 21, expected.size());
+        for (int chunkBytes = 1; chunkBytes <= records.length() + 2; chunkBytes++) {
+            assertEquals(expected, parse(file, chunkBytes), "chunks of " + chunkBytes + " bytes");
+        }
+    }
+
+    @Test
+    void aQuotedHeaderAfterTheByteOrderMarkIsNotAStrayQuote(@TempDir File dir) throws Exception {
+        File file = new File(dir, "Sites.csv");
+        Files.write(file.toPath(), "\uFEFF\"Site ID\",\"Site Name\nfull\",Height (ft)\nS1,x,1\nS2,y,2\n".getBytes(StandardCharsets.UTF_8));
+        for (int chunkBytes = 1; chunkBytes < 40; chunkBytes++) {
+            List<Map<String, String>> rows = new ArrayList<>();
+            List<String> headers = CsvExportReader.streamFile(file, chunkBytes, rows::add);
+            assertEquals(Arrays.asList("Site ID", "Site Name\nfull", "Height (ft)"), headers);
+            assertEquals(2, rows.size(), "chunks of " + chunkBytes + " bytes");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.echostar;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FanGeometryTest {
+
+    /** Furthest a chord of {@code segments} equal steps sits inside the arc. */
+    private static double chordError(double range, double beamwidth, int segments) {
+        return range * (1 - Math.cos(Math.toRadians(beamwidth / segments) / 2));
+    }
+
+    @Test
+    void segmentsGrowWithRangeAndBeamwidth() {
+        assertEquals(7, FanGeometry.arcSegments(500, 65, 2.0));
+        assertEquals(5, FanGeometry.arcSegments(300, 65, 2.0));
+        assertEquals(4, FanGeometry.arcSegments(500, 33, 2.0));
+        assertTrue(FanGeometry.arcSegments(500, 90, 2.0) > FanGeometry.arcSegments(500, 65, 2.0));
+        assertTrue(FanGeometry.arcSegments(500, 65, 0.5) > FanGeometry.arcSegments(500, 65, 2.0));
+    }
+
+    @Test
+    void segmentsKeepTheChordWithinTheError() {
+        for (int range = 50; range <= 5000; range += 50) {
+            for (double beamwidth : new double[]{10, 33, 45, 65, 90, 120}) {
+                int segments = FanGeometry.arcSegments(range, beamwidth, 2.0);
+                if (segments == FanGeometry.MIN_ARC_SEGMENTS || segments == FanGeometry.MAX_ARC_SEGMENTS) continue;
+                assertTrue(chordError(range, beamwidth, segments) <= 2.0 + 1e-9, range + " m, " + beamwidth + " degrees");
+                // and no more segments than that needs
+                assertTrue(chordError(range, beamwidth, segments - 1) > 2.0, range + " m, " + beamwidth + " degrees");
+            }
+        }
+    }
+
+    @Test
+    void segmentsAreClampedAtTheEnds() {
+        assertEquals(FanGeometry.MIN_ARC_SEGMENTS, FanGeometry.arcSegments(1, 65, 2.0));
+        assertEquals(FanGeometry.MIN_ARC_SEGMENTS, FanGeometry.arcSegments(500, 1, 2.0));
+        assertEquals(FanGeometry.MAX_ARC_SEGMENTS, FanGeometry.arcSegments(1_000_000, 360, 0.01));
+    }
+
+    @Test
+    void fittedToMeetsTheVertexBudget() {
+        Map<String, List<Map<String, String>>> sectorsByBand = new HashMap<>();
+        List<Map<String, String>> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) rows.add(Collections.singletonMap("Antenna File", "FFVV-65B-R2_1.pafx"));
+        sectorsByBand.put("N71", rows);
+        Map<String, BandSettings> settings = BandSettings.defaultsFor(sectorsByBand.keySet());
+
+        FanGeometry unlimited = FanGeometry.defaults();
+        assertSame(unlimited, unlimited.fittedTo(FanGeometry.FanCounts.of(sectorsByBand), settings));
+
+        int fullCoordinates = 1000 * FanGeometry.coordinatesPerFan(FanGeometry.arcSegments(500, 65, 2.0));
+        FanGeometry fitted = unlimited.withResolution(2.0, fullCoordinates / 2).fittedTo(FanGeometry.FanCounts.of(sectorsByBand), settings);
+        int fittedCoordinates = 1000 * FanGeometry.coordinatesPerFan(fitted.arcSegments(500, 65));
+        assertTrue(fittedCoordinates <= fullCoordinates / 2, "fitted to " + fittedCoordinates);
+        assertTrue(fitted.maxArcErrorMeters > 2.0);
+    }
+
+    @Test
+    void clampedFansAreCounted() {
+        Map<String, Double> patterns = new HashMap<>();
+        patterns.put("OMNI", 360.0);
+        FanGeometry fans = new FanGeometry(AntennaPatterns.of(patterns), 0.05, 0);
+        FanGeometry.FanCounts counts = new FanGeometry.FanCounts();
+        for (int i = 0; i < 3; i++) counts.add("N71", "OMNI_1.pafx");
+        counts.add("N71", "FFVV-65B-R2_1.pafx");
+        counts.add("N29", "OMNI_2.pafx");
+        Map<String, BandSettings> settings = BandSettings.defaultsFor(Arrays.asList("N71", "N29"));
+
+        // 5 cm needs 223 segments for 360 degrees at 500 m, 173 at 300 m, but only 41 for 65 degrees
+        assertEquals(4, fans.clampedFans(counts, settings));
+        settings.get("N29").include = false;
+        assertEquals(3, fans.clampedFans(counts, settings));
+        assertEquals(0, fans.withResolution(2.0, 0).clampedFans(counts, settings));
+    }
+
+    @Test
+    void beamwidthComesFromTheAntennaPattern() {
+        Map<String, Double> patterns = new HashMap<>();
+        patterns.put("FFHH-33B-R3", 33.0);
+        FanGeometry fans = new FanGeometry(AntennaPatterns.of(patterns), 2.0, 0);
+        assertEquals(33.0, fans.beamwidthOf(Collections.singletonMap("Antenna File", "ffhh-33b-r3_2.PAFX")));
+        assertEquals(AntennaPatterns.DEFAULT_BEAMWIDTH, fans.beamwidthOf(Collections.singletonMap("Antenna File", "Other_1.pafx")));
+        assertEquals(AntennaPatterns.DEFAULT_BEAMWIDTH, fans.beamwidthOf(Collections.<String, String>emptyMap()));
+    }
+}
@@ -0,0 +1,381 @@
+package com.echostar;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Golden-output regression harness: generates synthetic exports, runs the full headless pipeline
+ * on them and checks that the KML is byte-for-byte what it was when the golden files were recorded,
+ * and that each run stays within its heap limit. {@code mvn verify} runs it through
+ * {@link GoldenKmlIT}.
+ *
+ * Each case is a {@code <name>.properties} file in the golden directory holding the generator
+ * options (see {@link SyntheticExportGenerator.Options#fromProperties}) and:
+ * <ul>
+ * <li>{@code modes}: any of {@code memory}, {@code out-of-core} and {@code csv}; every mode must give
+ * the same KML. {@code csv} reads the export saved as CSV the way Planet writes it, with quotes inside
+ * unquoted names left as they are</li>
+ * <li>{@code memoryBudgetMb}: the spill budget for the out-of-core mode</li>
+ * <li>{@code csvChunkBytes}: the CSV reader's chunk size in the csv mode, small enough to put many
+ * chunk boundaries inside quoted fields</li>
+ * <li>{@code maxHeapMb}: the -Xmx of the JVM the case runs in, so exceeding it fails the case</li>
+ * <li>{@code maxMillis}: the expected parse plus KML time on a developer machine; advisory, a slower
+ * run is reported but does not fail, since CI machines vary too much for a wall-clock limit</li>
+ * <li>{@code keepKml}: also store the gzipped KML, so a mismatch can show the first differing line</li>
+ * <li>{@code onDemand}: only run when named explicitly</li>
+ * </ul>
+ * {@code update} records {@code <name>.expected} (digest, size and sector count) from the current
+ * build. The cases run with the rules in {@code controller-rules.tsv} and the beamwidths in
+ * {@code antenna-patterns.tsv} in the same directory, not the user's own.
+ */
+class GoldenHarness {
+
+    private static final String RESULT_PREFIX = "GOLDEN_RESULT ";
+
+    /**
+     * What one run of a case produced.
+     */
+    static class Outcome {
+        String sha256;
+        long bytes;
+        long sectorCount;
+        long parseMillis;
+        long kmlMillis;
+        long peakHeapMb;
+    }
+
+    /**
+     * Child process body: {@code --golden-run <export> <memoryBudgetMb> [<copy.kml.gz>]}, the export
+     * being an .xlsx workbook or a CSV directory.
+     * Streams the KML through a digest instead of writing it, so multi-gigabyte outputs cost no disk.
+     */
+    static void runCase(String[] args) throws Exception {
+        File export = new File(args[1]);
+        long budgetBytes = (long) (Double.parseDouble(args[2]) * (1 << 20));
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        OutputStream copy = args.length > 3 ? new GZIPOutputStream(new FileOutputStream(args[3]), 1 << 16) : null;
+        CountingOutputStream counter = new CountingOutputStream(copy != null ? copy : new OutputStream() {
+            @Override public void write(int b) { }
+            @Override public void write(byte[] b, int off, int len) { }
+        });
+        HeadlessExport.Stats stats;
+        try (OutputStream out = new DigestOutputStream(counter, digest)) {
+            stats = HeadlessExport.exportKml(export, out, ControllerRules.loadDefault(), FanGeometry.loadDefault(), budgetBytes, message -> { });
+        }
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peakHeap += pool.getPeakUsage().getUsed();
+        }
+        System.out.println(RESULT_PREFIX + hex(digest.digest()) + " " + counter.count + " " + stats.sectorCount + " "
+            + stats.parseMillis + " " + stats.kmlMillis + " " + (peakHeap >> 20));
+    }
+
+    /**
+     * Usage: {@code [check|update] [--dir golden] [--cases a,b]}, or {@code --golden-run ...} for the
+     * child process. Exits with 1 if any case fails.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--golden-run")) {
+            runCase(args);
+            return;
+        }
+        boolean update = args.length > 0 && args[0].equals("update");
+        int firstOption = args.length > 0 && !args[0].startsWith("--") ? 1 : 0;
+        Map<String, String> options = new HashMap<>();
+        for (int i = firstOption; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        List<String> named = options.containsKey("--cases") ? Arrays.asList(options.get("--cases").split(",")) : Collections.<String>emptyList();
+        List<String> failures = run(new File(options.getOrDefault("--dir", "golden")), named, update);
+        if (!failures.isEmpty()) {
+            System.out.println();
+            failures.forEach(failure -> System.out.println("FAILED " + failure));
+            System.exit(1);
+        }
+        System.out.println(update ? "Golden files updated." : "All golden cases passed.");
+    }
+
+    /**
+     * Runs (or with {@code update}, records) the cases in {@code dir}: the ones named, or every case
+     * that is not on-demand. Returns the failures, empty if all passed.
+     */
+    static List<String> run(File dir, List<String> named, boolean update) throws Exception {
+        File rulesFile = new File(dir, "controller-rules.tsv");
+        if (!rulesFile.isFile()) {
+            if (!update) {
+                throw new IOException("No " + rulesFile + "; record the golden files with update first.");
+            }
+            ControllerRules.defaults().save(rulesFile);
+        }
+
+        File[] caseFiles = dir.listFiles((d, name) -> name.endsWith(".properties"));
+        if (caseFiles == null || caseFiles.length == 0) {
+            throw new IOException("No golden cases (*.properties) in " + dir.getAbsolutePath());
+        }
+        Arrays.sort(caseFiles);
+        List<String> failures = new ArrayList<>();
+        System.out.println(String.format("%-10s %-12s %10s %10s %10s %10s  %s", "case", "mode", "sectors", "parse ms", "kml ms", "heap MB", "result"));
+        for (File caseFile : caseFiles) {
+            String name = caseFile.getName().substring(0, caseFile.getName().length() - ".properties".length());
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(caseFile.toPath(), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            boolean onDemand = Boolean.parseBoolean(properties.getProperty("onDemand", "false"));
+            if (named.isEmpty() ? onDemand : !named.contains(name)) continue;
+            runCaseFile(dir, name, properties, rulesFile, update, failures);
+        }
+        return failures;
+    }
+
+    private static void runCaseFile(File dir, String name, Properties properties, File rulesFile, boolean update, List<String> failures) throws Exception {
+        SyntheticExportGenerator.Options generatorOptions = SyntheticExportGenerator.Options.fromProperties(properties);
+        File inputDir = new File(System.getProperty("java.io.tmpdir"), "planetkml-golden");
+        Files.createDirectories(inputDir.toPath());
+        // Keyed by the options and generator version, so editing either regenerates the input
+        String inputKey = SyntheticExportGenerator.CONTENT_VERSION + " " + generatorOptions;
+        File input = new File(inputDir, name + "-" + Integer.toHexString(inputKey.hashCode()) + ".xlsx");
+        if (!input.isFile()) {
+            File partial = new File(input.getPath() + ".tmp");
+            SyntheticExportGenerator.generate(partial, generatorOptions);
+            Files.move(partial.toPath(), input.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        File expectedFile = new File(dir, name + ".expected");
+        File goldenKml = new File(dir, name + ".kml.gz");
+        boolean keepKml = Boolean.parseBoolean(properties.getProperty("keepKml", "false"));
+        Properties expected = new Properties();
+        if (!update) {
+            if (!expectedFile.isFile()) {
+                failures.add(name + ": no " + expectedFile.getName() + "; record it with update");
+                return;
+            }
+            try (Reader reader = Files.newBufferedReader(expectedFile.toPath(), StandardCharsets.UTF_8)) {
+                expected.load(reader);
+            }
+        }
+
+        String maxHeapMb = properties.getProperty("maxHeapMb", "1024");
+        long maxMillis = Long.parseLong(properties.getProperty("maxMillis", String.valueOf(Long.MAX_VALUE)));
+        Outcome recorded = null;
+        for (String mode : properties.getProperty("modes", "memory").split("\\s*,\\s*")) {
+            String budgetMb = mode.equals("out-of-core") ? properties.getProperty("memoryBudgetMb", "64") : "0";
+            File actualKml = keepKml ? File.createTempFile("planetkml-golden-" + name, ".kml.gz") : null;
+            String chunkBytes = mode.equals("csv") ? properties.getProperty("csvChunkBytes") : null;
+            Outcome outcome;
+            try {
+                File export = mode.equals("csv") ? csvExport(input) : input;
+                outcome = runChild(export, budgetMb, actualKml, maxHeapMb, rulesFile, chunkBytes);
+            } catch (IOException e) {
+                failures.add(name + "/" + mode + ": " + e.getMessage());
+                System.out.println(String.format("%-10s %-12s %10s %10s %10s %10s  %s", name, mode, "-", "-", "-", "-", "ERROR"));
+                if (actualKml != null) actualKml.delete();
+                continue;
+            }
+
+            List<String> problems = new ArrayList<>();
+            if (update && recorded == null) {
+                recorded = outcome;
+                expected.setProperty("sha256", outcome.sha256);
+                expected.setProperty("bytes", String.valueOf(outcome.bytes));
+                expected.setProperty("sectors", String.valueOf(outcome.sectorCount));
+                if (actualKml != null) Files.move(actualKml.toPath(), goldenKml.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } else if (!outcome.sha256.equals(expected.getProperty("sha256"))) {
+                String difference = actualKml != null && goldenKml.isFile() ? firstDifference(goldenKml, actualKml) : "";
+                problems.add("KML differs (" + outcome.bytes + " bytes, expected " + expected.getProperty("bytes") + ")" + difference);
+            }
+            if (!String.valueOf(outcome.sectorCount).equals(expected.getProperty("sectors"))) {
+                problems.add(outcome.sectorCount + " sectors, expected " + expected.getProperty("sectors"));
+            }
+            boolean slow = outcome.parseMillis + outcome.kmlMillis > maxMillis;
+            if (actualKml != null && actualKml.isFile() && !actualKml.delete()) actualKml.deleteOnExit();
+
+            System.out.println(String.format("%-10s %-12s %10d %10d %10d %10d  %s", name, mode, outcome.sectorCount,
+                outcome.parseMillis, outcome.kmlMillis, outcome.peakHeapMb, problems.isEmpty() ? (update && recorded == outcome ? "RECORDED" : "OK") + (slow ? " (slower than " + maxMillis + " ms)" : "") : "FAIL"));
+            for (String problem : problems) {
+                failures.add(name + "/" + mode + ": " + problem);
+            }
+        }
+
+        if (update && recorded != null) {
+            try (Writer writer = Files.newBufferedWriter(expectedFile.toPath(), StandardCharsets.UTF_8)) {
+                writer.write("# Recorded by GoldenHarness update; " + generatorOptions + "\n");
+                for (String key : new String[]{"sha256", "bytes", "sectors"}) {
+                    writer.write(key + "=" + expected.getProperty(key) + "\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * The CSV export beside {@code input}, written the first time it is needed.
+     */
+    private static File csvExport(File input) throws Exception {
+        File csvDir = new File(input.getPath().replaceAll("\\.xlsx$", "") + "-csv");
+        if (csvDir.isDirectory()) return csvDir;
+        File partial = new File(csvDir.getPath() + ".tmp");
+        Files.createDirectories(partial.toPath());
+        for (String sheetName : PlanetExportProcessor.SHEETS_TO_READ) {
+            File csvFile = new File(partial, sheetName + ".csv");
+            String[][] keys = {null};
+            try (Writer writer = Files.newBufferedWriter(csvFile.toPath(), StandardCharsets.UTF_8)) {
+                writer.write('\ufeff');
+                List<String> headers = PlanetExportProcessor.streamSheetWithSAX(input, sheetName, row -> {
+                    try {
+                        if (keys[0] == null) {
+                            keys[0] = row.keySet().toArray(new String[0]);
+                            writePlanetCsvRecord(writer, Arrays.asList(keys[0]));
+                        }
+                        List<String> values = new ArrayList<>();
+                        for (String key : keys[0]) values.add(row.getOrDefault(key, ""));
+                        writePlanetCsvRecord(writer, values);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                if (headers != null && keys[0] == null) writePlanetCsvRecord(writer, headers);
+            }
+        }
+        Files.move(partial.toPath(), csvDir.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return csvDir;
+    }
+
+    /**
+     * Writes one CSV record, CRLF-terminated, the way Planet does: a field is only quoted when it has
+     * to be (a comma or line break in it, or a quote at its start), so a quote elsewhere in a field,
+     * such as an inch mark, is written bare.
+     */
+    private static void writePlanetCsvRecord(Writer writer, List<String> values) throws IOException {
+        for (int c = 0; c < values.size(); c++) {
+            if (c > 0) writer.write(',');
+            String value = values.get(c);
+            boolean quoted = value.startsWith("\"") || value.indexOf(',') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+            writer.write(quoted ? "\"" + value.replace("\"", "\"\"") + "\"" : value);
+        }
+        writer.write("\r\n");
+    }
+
+    private static Outcome runChild(File input, String budgetMb, File copyTo, String maxHeapMb, File rulesFile, String chunkBytes) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-Xmx" + maxHeapMb + "m");
+        command.add("-Djava.awt.headless=true");
+        if (chunkBytes != null) command.add("-Dplanetkml.csvChunkBytes=" + chunkBytes);
+        command.add("-Dplanetkml.rules=" + rulesFile.getAbsolutePath());
+        command.add("-Dplanetkml.antennas=" + new File(rulesFile.getAbsoluteFile().getParentFile(), "antenna-patterns.tsv").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(GoldenHarness.class.getName());
+        command.add("--golden-run");
+        command.add(input.getPath());
+        command.add(budgetMb);
+        if (copyTo != null) command.add(copyTo.getPath());
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        Outcome outcome = null;
+        String lastLine = "";
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    String[] parts = line.substring(RESULT_PREFIX.length()).split(" ");
+                    outcome = new Outcome();
+                    outcome.sha256 = parts[0];
+                    outcome.bytes = Long.parseLong(parts[1]);
+                    outcome.sectorCount = Long.parseLong(parts[2]);
+                    outcome.parseMillis = Long.parseLong(parts[3]);
+                    outcome.kmlMillis = Long.parseLong(parts[4]);
+                    outcome.peakHeapMb = Long.parseLong(parts[5]);
+                } else if (!line.startsWith("Could not parse number")) {
+                    // The dirty-data warnings are expected; keep anything else for the error message
+                    lastLine = line;
+                }
+            }
+        }
+        if (process.waitFor() != 0 || outcome == null) {
+            throw new IOException("run failed with -Xmx" + maxHeapMb + "m: " + lastLine);
+        }
+        return outcome;
+    }
+
+    /**
+     * The first line where two gzipped KML files differ, for the failure message.
+     */
+    private static String firstDifference(File expectedKml, File actualKml) throws IOException {
+        try (BufferedReader expected = gzipReader(expectedKml); BufferedReader actual = gzipReader(actualKml)) {
+            for (int lineNumber = 1; ; lineNumber++) {
+                String expectedLine = expected.readLine();
+                String actualLine = actual.readLine();
+                if (expectedLine == null && actualLine == null) return "";
+                if (expectedLine == null || !expectedLine.equals(actualLine)) {
+                    return "; first difference at line " + lineNumber + ":\n    expected: " + abbreviate(expectedLine) + "\n    actual:   " + abbreviate(actualLine);
+                }
+            }
+        }
+    }
+
+    private static BufferedReader gzipReader(File file) throws IOException {
+        InputStream in = new GZIPInputStream(new FileInputStream(file), 1 << 16);
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    private static String abbreviate(String line) {
+        if (line == null) return "<end of file>";
+        return line.length() > 200 ? line.substring(0, 200) + "..." : line;
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
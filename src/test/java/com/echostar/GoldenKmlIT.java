@@ -0,0 +1,25 @@
+package com.echostar;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the golden KML cases (see {@link GoldenHarness}) as part of {@code mvn verify}.
+ * {@code -Dgolden.cases=a,b} picks the cases, {@code -Dgolden.update=true} re-records them.
+ */
+class GoldenKmlIT {
+
+    @Test
+    void kmlMatchesGoldenFiles() throws Exception {
+        String cases = System.getProperty("golden.cases", "");
+        List<String> named = cases.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(cases.split(","));
+        List<String> failures = GoldenHarness.run(new File("golden"), named, Boolean.getBoolean("golden.update"));
+        assertTrue(failures.isEmpty(), () -> "Golden cases failed:\n" + String.join("\n", failures));
+    }
+}
@@ -0,0 +1,134 @@
+package com.echostar;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PciConflictAnalyzerTest {
+
+    private static final Map<String, Integer> RANGES = Collections.singletonMap("N71", 300);
+
+    private static Map<String, String> sector(String id, double lat, double lon, double azimuth, int pci) {
+        Map<String, String> row = new HashMap<>();
+        row.put("Sector ID", id);
+        row.put("Band Name", "N71");
+        row.put("Latitude", String.valueOf(lat));
+        row.put("Longitude", String.valueOf(lon));
+        row.put("Azimuth", String.valueOf(azimuth));
+        row.put("Physical Cell ID", String.valueOf(pci));
+        return row;
+    }
+
+    /** Adds A at (lat, lon) and B {@code meters} due east of it. */
+    private static void addPair(List<Map<String, String>> rows, String name, double lat, double lon, double meters, double azimuthA, double azimuthB, int pci) {
+        double[] east = KmlWriter.getDestinationPoint(lat, lon, 90, meters);
+        rows.add(sector(name + "A", lat, lon, azimuthA, pci));
+        rows.add(sector(name + "B", east[0], east[1], azimuthB, pci));
+    }
+
+    @Test
+    void distancesHoldAcrossANationwideExport() {
+        List<Map<String, String>> rows = new ArrayList<>();
+        // Fans face away from each other, so only the distance decides
+        addPair(rows, "north", 49.0, -122.0, 950, 270, 90, 10);
+        addPair(rows, "south", 25.0, -80.0, 1050, 270, 90, 10);
+        addPair(rows, "middle", 37.0, -100.0, 999, 270, 90, 10);
+
+        List<PciConflictAnalyzer.Conflict> conflicts = new PciConflictAnalyzer(1000, true, false, AntennaPatterns.empty()).analyze(rows, RANGES);
+
+        assertEquals(2, conflicts.size());
+        assertEquals("northA", conflicts.get(0).a.get("Sector ID"));
+        assertEquals(950, conflicts.get(0).distanceMeters, 1.0);
+        assertEquals("middleA", conflicts.get(1).a.get("Sector ID"));
+        assertEquals(999, conflicts.get(1).distanceMeters, 1.0);
+    }
+
+    @Test
+    void neighboursAcrossGridCellBoundariesAreFound() {
+        List<Map<String, String>> rows = new ArrayList<>();
+        // Pairs spread over many cells and latitudes, each 990 m apart in some direction
+        int pci = 0;
+        for (double lat = 24.0; lat <= 50.0; lat += 0.37) {
+            for (double bearing = 0; bearing < 360; bearing += 45) {
+                double lon = -120.0 + lat * 0.9 + bearing / 1000;
+                double[] other = KmlWriter.getDestinationPoint(lat, lon, bearing, 990);
+                rows.add(sector("a" + pci, lat, lon, Double.NaN, pci));
+                rows.add(sector("b" + pci, other[0], other[1], Double.NaN, pci));
+                pci++;
+            }
+        }
+        List<PciConflictAnalyzer.Conflict> conflicts = new PciConflictAnalyzer(1000, false, false, AntennaPatterns.empty()).analyze(rows, RANGES);
+        assertEquals(pci, conflicts.size());
+    }
+
+    /** Adds A and B 200 m apart, facing away from each other, with the given PCIs. */
+    private static void addPair(List<Map<String, String>> rows, String name, double lat, int pciA, int pciB) {
+        double[] east = KmlWriter.getDestinationPoint(lat, -93.0, 90, 200);
+        rows.add(sector(name + "A", lat, -93.0, 270, pciA));
+        rows.add(sector(name + "B", east[0], east[1], 90, pciB));
+    }
+
+    @Test
+    void clashesAreLabelledWithTheMostSpecificType() {
+        List<Map<String, String>> rows = new ArrayList<>();
+        addPair(rows, "same", 45.0, 17, 17);
+        addPair(rows, "mod30", 45.1, 17, 47);
+        addPair(rows, "mod3", 45.2, 17, 20);
+        addPair(rows, "none", 45.3, 17, 19);
+
+        List<PciConflictAnalyzer.Conflict> both = new PciConflictAnalyzer(1000, true, true, AntennaPatterns.empty()).analyze(rows, RANGES);
+        assertEquals(3, both.size());
+        assertEquals(PciConflictAnalyzer.Type.PCI_COLLISION, both.get(0).type);
+        assertEquals(PciConflictAnalyzer.Type.MOD30, both.get(1).type);
+        assertEquals("mod30A", both.get(1).a.get("Sector ID"));
+        assertEquals(PciConflictAnalyzer.Type.MOD3, both.get(2).type);
+        assertEquals("mod3A", both.get(2).a.get("Sector ID"));
+
+        List<PciConflictAnalyzer.Conflict> mod3Only = new PciConflictAnalyzer(1000, true, false, AntennaPatterns.empty()).analyze(rows, RANGES);
+        assertEquals(3, mod3Only.size());
+        assertEquals(PciConflictAnalyzer.Type.MOD3, mod3Only.get(1).type);
+        assertEquals(PciConflictAnalyzer.Type.MOD3, mod3Only.get(2).type);
+
+        List<PciConflictAnalyzer.Conflict> mod30Only = new PciConflictAnalyzer(1000, false, true, AntennaPatterns.empty()).analyze(rows, RANGES);
+        assertEquals(2, mod30Only.size());
+        assertEquals(PciConflictAnalyzer.Type.MOD30, mod30Only.get(1).type);
+    }
+
+    @Test
+    void overlappingFansAreReportedBeyondTheDistance() {
+        List<Map<String, String>> rows = new ArrayList<>();
+        addPair(rows, "facing", 45.0, -93.0, 500, 90, 270, 7);
+        addPair(rows, "away", 45.1, -93.0, 500, 270, 90, 7 + 3);
+
+        List<PciConflictAnalyzer.Conflict> conflicts = new PciConflictAnalyzer(100, true, false, AntennaPatterns.empty()).analyze(rows, RANGES);
+
+        assertEquals(1, conflicts.size());
+        PciConflictAnalyzer.Conflict conflict = conflicts.get(0);
+        assertEquals("facingA", conflict.a.get("Sector ID"));
+        assertTrue(conflict.fansOverlap);
+        assertEquals(PciConflictAnalyzer.Type.PCI_COLLISION, conflict.type);
+    }
+
+    @Test
+    void overlapUsesEachAntennasBeamwidth() {
+        List<Map<String, String>> rows = new ArrayList<>();
+        // 400 m apart, angled towards each other: 65 degree fans touch, 20 degree ones do not
+        addPair(rows, "angled", 45.0, -93.0, 400, 120, 300, 5);
+        rows.get(0).put("Antenna File", "NARROW_1.pafx");
+        rows.get(1).put("Antenna File", "NARROW_2.pafx");
+
+        List<PciConflictAnalyzer.Conflict> wide = new PciConflictAnalyzer(100, false, false, AntennaPatterns.empty()).analyze(rows, RANGES);
+        assertEquals(1, wide.size());
+        assertTrue(wide.get(0).fansOverlap);
+
+        Map<String, Double> narrow = Collections.singletonMap("NARROW", 20.0);
+        assertTrue(new PciConflictAnalyzer(100, false, false, AntennaPatterns.of(narrow)).analyze(rows, RANGES).isEmpty());
+    }
+}
@@ -0,0 +1,63 @@
+package com.echostar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpillSorterTest {
+
+    private static final String[] KEYS = {"b", "a", "c", "b", "a", "b", "c", "a"};
+
+    /** Adds KEYS in sequence order and returns "key:seq" in the order they come back. */
+    private static List<String> sortedKeys(File dir, long budgetBytes, int[] runCount) throws Exception {
+        List<String> order = new ArrayList<>();
+        try (SpillSorter sorter = new SpillSorter(dir, "test", new SpillSorter.Budget(budgetBytes))) {
+            for (int seq = 0; seq < KEYS.length; seq++) {
+                sorter.add(KEYS[seq], seq, new String[]{KEYS[seq] + seq, null});
+            }
+            sorter.seal();
+            runCount[0] = sorter.getRunCount();
+            try (SpillSorter.CloseableIterator<SpillSorter.Record> records = sorter.sortedIterator()) {
+                while (records.hasNext()) {
+                    SpillSorter.Record record = records.next();
+                    assertEquals(record.key + record.seq, record.values[0]);
+                    assertNull(record.values[1]);
+                    order.add(record.key + ":" + record.seq);
+                }
+            }
+        }
+        return order;
+    }
+
+    @Test
+    void equalKeysComeBackInInsertionOrderSoTheLastOneWins(@TempDir File dir) throws Exception {
+        List<String> expected = Arrays.asList("a:1", "a:4", "a:7", "b:0", "b:3", "b:5", "c:2", "c:6");
+        int[] runs = new int[1];
+
+        assertEquals(expected, sortedKeys(dir, Long.MAX_VALUE, runs));
+        assertEquals(0, runs[0]);
+
+        // A budget below one record spills every add, so each key is spread over several runs
+        assertEquals(expected, sortedKeys(dir, 1, runs));
+        assertEquals(KEYS.length, runs[0]);
+
+        // Part spilled, part still buffered when read back
+        assertEquals(expected, sortedKeys(dir, 600, runs));
+        assertTrue(runs[0] > 0 && runs[0] < KEYS.length, "runs: " + runs[0]);
+    }
+
+    @Test
+    void closeDeletesRuns(@TempDir File dir) throws Exception {
+        sortedKeys(dir, 1, new int[1]);
+        String[] left = dir.list();
+        assertEquals(0, left == null ? 0 : left.length);
+    }
+}
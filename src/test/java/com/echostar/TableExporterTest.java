@@ -0,0 +1,118 @@
+package com.echostar;
+
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TableExporterTest {
+
+    private static Map<String, String> row(String... keyValues) {
+        Map<String, String> row = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            row.put(keyValues[i], keyValues[i + 1]);
+        }
+        return row;
+    }
+
+    @Test
+    void csvQuotesOnlyFieldsThatNeedIt() throws Exception {
+        List<Map<String, String>> rows = Arrays.asList(
+            row("Name", "plain", "Note", "", "Height (ft)", "80"),
+            row("Name", "a,b", "Note", "say \"hi\"", "Height (ft)", "12\""),
+            row("Name", "line1\nline2", "Note", "cr\r", "Height (ft)", "\""),
+            row("Name", "missing"));
+        StringWriter out = new StringWriter();
+        TableExporter.writeCsv(Arrays.asList("Name", "Note", "Height (ft)"), rows, out);
+        assertEquals("Name,Note,Height (ft)\n"
+            + "plain,,80\n"
+            + "\"a,b\",\"say \"\"hi\"\"\",\"12\"\"\"\n"
+            + "\"line1\nline2\",\"cr\r\",\"\"\"\"\n"
+            + "missing,,\n", out.toString());
+    }
+
+    @Test
+    void csvHeadersAreQuotedToo() throws Exception {
+        StringWriter out = new StringWriter();
+        TableExporter.writeCsvHeader(out, Arrays.asList("A", "B,C"));
+        assertEquals("A,\"B,C\"\n", out.toString());
+    }
+
+    @Test
+    void csvFilesAreNamedAfterTheTables() {
+        Map<String, File> files = TableExporter.csvFilesFor(new File("out", "market.csv"), Arrays.asList("Sites", "PCI Conflicts"));
+        assertEquals("market_Sites.csv", files.get("Sites").getName());
+        assertEquals("market_PCI_Conflicts.csv", files.get("PCI Conflicts").getName());
+        assertEquals("market_Sites.csv", TableExporter.csvFilesFor(new File("market"), Arrays.asList("Sites")).get("Sites").getName());
+    }
+
+    @Test
+    void onlyPlainDecimalsCountAsNumbers() {
+        for (String number : Arrays.asList("0", "-12", "+3", "40.75", "-74.", ".5", "1e3", "2.5E-4", "007")) {
+            assertTrue(TableExporter.isDecimal(number), number);
+        }
+        for (String text : Arrays.asList("", "-", ".", "12f", "1d", "NaN", "Infinity", "-Infinity", "0x1p3", "1e", "1e+", " 12", "12 ", "1,5", "N/A", "12\"")) {
+            assertFalse(TableExporter.isDecimal(text), text);
+        }
+    }
+
+    @Test
+    void xlsxKeepsOddValuesAsText(@TempDir File dir) throws Exception {
+        List<String> headers = Arrays.asList("Sector ID", "Height (ft)");
+        List<Map<String, String>> rows = Arrays.asList(
+            row("Sector ID", "1", "Height (ft)", "80.5"),
+            row("Sector ID", "2", "Height (ft)", "12f"),
+            row("Sector ID", "3", "Height (ft)", "NaN"),
+            row("Sector ID", "4", "Height (ft)", "1e999"));
+        Map<String, SheetData> tables = new LinkedHashMap<>();
+        tables.put("Sectors", new SheetData(headers, rows));
+        File file = new File(dir, "tables.xlsx");
+        TableExporter.writeXlsx(tables, file);
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(file)) {
+            Sheet sheet = workbook.getSheet("Sectors");
+            // IDs are not a numeric column, so they stay text
+            assertEquals(CellType.STRING, sheet.getRow(1).getCell(0).getCellType());
+            assertEquals(80.5, sheet.getRow(1).getCell(1).getNumericCellValue());
+            String[] text = {"12f", "NaN", "1e999"};
+            for (int r = 2; r <= 4; r++) {
+                Row row = sheet.getRow(r);
+                assertEquals(CellType.STRING, row.getCell(1).getCellType());
+                assertEquals(text[r - 2], row.getCell(1).getStringCellValue());
+            }
+        }
+        assertEquals(Collections.singletonList("tables.xlsx"), Arrays.asList(dir.list()));
+    }
+
+    @Test
+    void failedWritesLeaveNoTempFile(@TempDir File dir) {
+        Map<String, String> broken = new AbstractMap<String, String>() {
+            @Override public String get(Object key) { throw new IllegalStateException("broken row"); }
+            @Override public Set<Entry<String, String>> entrySet() { return Collections.emptySet(); }
+        };
+        SheetData table = new SheetData(Arrays.asList("Name"), Arrays.asList(row("Name", "ok"), broken));
+        Map<String, SheetData> tables = Collections.singletonMap("Sites", table);
+
+        assertThrows(IllegalStateException.class, () -> TableExporter.writeCsv(table, new File(dir, "sites.csv")));
+        assertThrows(IllegalStateException.class, () -> TableExporter.writeXlsx(tables, new File(dir, "sites.xlsx")));
+        assertEquals(0, dir.list().length);
+    }
+}